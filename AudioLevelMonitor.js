@@ -0,0 +1,60 @@
+'use strict';
+
+import {DeviceEventEmitter, NativeModules} from 'react-native';
+import EventTarget from 'event-target-shim';
+
+import RTCEvent from './RTCEvent';
+
+const {WebRTCModule} = NativeModules;
+
+const AUDIO_LEVEL_MONITOR_EVENTS = [
+  'speakingchange',
+  'activespeakerschange'
+];
+
+/**
+ * Custom: meters the audio levels of all local and remote audio tracks
+ * natively and fires events only when a track starts / stops speaking
+ * (speakingchange with trackId, speaking and level) and when the list of the
+ * loudest speaking tracks changes (activespeakerschange with trackIds).
+ * Replaces polling getStats for audioOutputLevel. The level of local tracks
+ * is only available with the audio device module built by the library.
+ * Android only.
+ */
+class AudioLevelMonitor extends EventTarget(AUDIO_LEVEL_MONITOR_EVENTS) {
+  activeSpeakers: Array<string>;
+  onspeakingchange: ?Function;
+  onactivespeakerschange: ?Function;
+
+  constructor() {
+    super();
+
+    this.activeSpeakers = [];
+
+    DeviceEventEmitter.addListener('audioLevelMonitorSpeakingChanged', ev => {
+      this.dispatchEvent(new RTCEvent('speakingchange', ev));
+    });
+    DeviceEventEmitter.addListener('audioLevelMonitorActiveSpeakersChanged', ev => {
+      this.activeSpeakers = ev.trackIds;
+      this.dispatchEvent(new RTCEvent('activespeakerschange', ev));
+    });
+  }
+
+  /**
+   * Starts (or restarts with new options) metering.
+   *
+   * @param {Object} options - interval (in milliseconds, 200 by default),
+   * threshold (in the range [0, 1], 0.05 by default) and maxSpeakers (the
+   * length of the active speaker list, 3 by default).
+   */
+  start(options = {}) {
+    WebRTCModule.startAudioLevelMonitor(options);
+  }
+
+  stop() {
+    WebRTCModule.stopAudioLevelMonitor();
+    this.activeSpeakers = [];
+  }
+}
+
+export default new AudioLevelMonitor();
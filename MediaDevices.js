@@ -1,9 +1,11 @@
 'use strict';
 
-import {NativeModules} from 'react-native';
+import {DeviceEventEmitter, NativeModules} from 'react-native';
 import EventTarget from 'event-target-shim';
 
+import getDisplayMedia from './getDisplayMedia';
 import getUserMedia from './getUserMedia';
+import RTCEvent from './RTCEvent';
 
 const {WebRTCModule} = NativeModules;
 
@@ -12,9 +14,16 @@ const MEDIA_DEVICES_EVENTS = [
 ];
 
 class MediaDevices extends EventTarget(MEDIA_DEVICES_EVENTS) {
-    // TODO: implement.
     ondevicechange: ?Function;
 
+    constructor() {
+        super();
+
+        DeviceEventEmitter.addListener('mediaDevicesOnDeviceChange', () => {
+            this.dispatchEvent(new RTCEvent('devicechange'));
+        });
+    }
+
     /**
      * W3C "Media Capture and Streams" compatible {@code enumerateDevices}
      * implementation.
@@ -23,6 +32,49 @@ class MediaDevices extends EventTarget(MEDIA_DEVICES_EVENTS) {
         return new Promise(resolve => WebRTCModule.enumerateDevices(resolve));
     }
 
+    /**
+     * Private / custom API for describing the audio device module: the record
+     * and playout sample rates, the use of the hardware echo canceler and
+     * noise suppressor, the support of the low-latency path and the latency
+     * of the record and playout buffers in milliseconds. Android only.
+     *
+     * The audio device module cannot be configured from JavaScript: it is
+     * built along with the native PeerConnectionFactory, before any
+     * JavaScript runs, and cannot be replaced afterwards. Configure it in
+     * native code by passing an AudioDeviceOptions to
+     * WebRTCModule.Options#setAudioDeviceOptions.
+     *
+     * @returns {Promise<Object>}
+     */
+    _getAudioDeviceModuleInfo() {
+        return new Promise(resolve => WebRTCModule.getAudioDeviceModuleInfo(resolve));
+    }
+
+    /**
+     * Private / custom API for listing the video codecs the native encoder and
+     * decoder factories support in order of preference, as configured by the
+     * codec policy of the native module. Android only.
+     *
+     * @returns {Promise<Object>} encoders and decoders, each an array of
+     * objects with name and params
+     */
+    _getSupportedVideoCodecs() {
+        return new Promise(resolve => WebRTCModule.getSupportedVideoCodecs(resolve));
+    }
+
+    /**
+     * W3C "Screen Capture" compatible {@code getDisplayMedia} implementation.
+     * The width, height and frameRate of the video constraints cap the
+     * resolution and frame rate of the capture. Android only.
+     * See: https://www.w3.org/TR/screen-capture/#dom-mediadevices-getdisplaymedia
+     *
+     * @param {*} constraints
+     * @returns {Promise}
+     */
+    getDisplayMedia(constraints) {
+        return getDisplayMedia(constraints);
+    }
+
     /**
      * W3C "Media Capture and Streams" compatible {@code getUserMedia}
      * implementation.
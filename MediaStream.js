@@ -126,6 +126,7 @@ export default class MediaStream extends EventTarget(MEDIA_STREAM_EVENTS) {
   }
 
   release() {
+    this._tracks.forEach(track => track._unregisterEvents());
     WebRTCModule.mediaStreamRelease(this._reactTag);
   }
 }
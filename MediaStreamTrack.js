@@ -1,8 +1,10 @@
 'use strict';
 
-import {NativeModules} from 'react-native';
+import {DeviceEventEmitter, NativeModules} from 'react-native';
 import EventTarget from 'event-target-shim';
 import MediaStreamErrorEvent from './MediaStreamErrorEvent';
+import MediaStreamTrackEvent from './MediaStreamTrackEvent';
+import * as RTCUtil from './RTCUtil';
 
 import type MediaStreamError from './MediaStreamError';
 
@@ -14,6 +16,12 @@ const MEDIA_STREAM_TRACK_EVENTS = [
   'unmute',
   // see: https://www.w3.org/TR/mediacapture-streams/#constrainable-interface
   'overconstrained',
+  // Custom: the output format was adapted to the load of the device.
+  'loadadaptation',
+  // Custom: the camera stopped delivering frames and is being restarted /
+  // delivers frames again.
+  'capturestalled',
+  'capturerecovered',
 ];
 
 type MediaStreamTrackState = "live" | "ended";
@@ -27,6 +35,10 @@ type SourceInfo = {
 
 class MediaStreamTrack extends EventTarget(MEDIA_STREAM_TRACK_EVENTS) {
   _enabled: boolean;
+  _settings: Object;
+  _baseSettings: Object;
+  _loadAdaptationSubscription: ?Object;
+  _captureStateSubscription: ?Object;
   id: string;
   kind: string;
   label: string;
@@ -52,8 +64,52 @@ class MediaStreamTrack extends EventTarget(MEDIA_STREAM_TRACK_EVENTS) {
     this.muted = false;
     this.readonly = true; // how to decide?
     this.remote = info.remote;
+    this._settings = {};
+    this._baseSettings = {};
+    this._setSettings(info.settings || {});
     this.readyState = (_readyState === "initializing"
                     || _readyState === "live") ? "live" : "ended";
+
+    if (info.adaptToDeviceLoad) {
+      this._loadAdaptationSubscription
+        = DeviceEventEmitter.addListener('mediaStreamTrackLoadAdaptationChanged', ev => {
+          if (ev.trackId !== this.id) {
+            return;
+          }
+          this._setSettings(ev.settings);
+          this.dispatchEvent(new MediaStreamTrackEvent('loadadaptation', {
+            track: this,
+            level: ev.level,
+            reason: ev.reason
+          }));
+        });
+    }
+
+    if (!this.remote && this.kind === 'video') {
+      this._captureStateSubscription
+        = DeviceEventEmitter.addListener('mediaStreamTrackCaptureStateChanged', ev => {
+          if (ev.trackId !== this.id) {
+            return;
+          }
+          if (ev.state === 'ended') {
+            // The capture was stopped by the system e.g. the user revoked
+            // the screen capture.
+            this.readyState = 'ended';
+            this.dispatchEvent(new MediaStreamTrackEvent('ended', {track: this}));
+          } else if (ev.state === 'stalled') {
+            this.dispatchEvent(new MediaStreamTrackEvent('capturestalled', {
+              track: this,
+              reason: ev.reason,
+              attempt: ev.attempt
+            }));
+          } else {
+            this.dispatchEvent(new MediaStreamTrackEvent('capturerecovered', {
+              track: this,
+              stallDuration: ev.stallDuration
+            }));
+          }
+        });
+    }
   }
 
   get enabled(): boolean {
@@ -72,6 +128,7 @@ class MediaStreamTrack extends EventTarget(MEDIA_STREAM_TRACK_EVENTS) {
   stop() {
     WebRTCModule.mediaStreamTrackSetEnabled(this.id, false);
     this.readyState = 'ended';
+    this._unregisterEvents();
     // TODO: save some stopped flag?
   }
 
@@ -92,8 +149,105 @@ class MediaStreamTrack extends EventTarget(MEDIA_STREAM_TRACK_EVENTS) {
     WebRTCModule.mediaStreamTrackSwitchCamera(this.id);
   }
 
-  applyConstraints() {
-    throw new Error('Not implemented.');
+  /**
+   * Private / custom API for taking a snapshot of the next frame of this
+   * (local or remote) video track. Android only.
+   *
+   * @param {number} maxWidth - The maximum width of the snapshot; the aspect
+   * ratio is preserved. Zero (the default) for the width of the frame.
+   * @param {string} format - 'jpeg' (the default), 'png' or 'webp'.
+   * @returns {Promise<string>} The path of the file the snapshot was written to.
+   */
+  _captureFrame(maxWidth = 0, format = 'jpeg') {
+    if (this.kind !== 'video') {
+      return Promise.reject(new Error('Only implemented for video tracks'));
+    }
+    return new Promise((resolve, reject) => {
+      WebRTCModule.captureFrame(this.id, maxWidth, format, (successful, data) => {
+        if (successful) {
+          resolve(data);
+        } else {
+          reject(new Error(data));
+        }
+      });
+    });
+  }
+
+  /**
+   * Private / custom API for getting the timing of the frame processors
+   * (enabled with the frameProcessors video constraint) of this local video
+   * track. Android only.
+   *
+   * @returns {Promise<Array<Object>>} One entry per processor, in processing
+   * order, with name, frames, framesDropped, averageProcessingTime and
+   * maxProcessingTime (in milliseconds).
+   */
+  _getProcessorStats() {
+    if (this.remote || this.kind !== 'video') {
+      return Promise.resolve([]);
+    }
+    return new Promise(resolve => {
+      WebRTCModule.mediaStreamTrackGetProcessorStats(this.id, resolve);
+    });
+  }
+
+  /**
+   * Private / custom API for getting the timing of the camera pipeline of
+   * this local video track. Android only.
+   *
+   * @returns {Promise<Object>} The latencies (in milliseconds) from the last
+   * capture request to the camera opening (openingLatency), being open
+   * (openLatency) and delivering its first frame (firstFrameLatency), the
+   * switchCount and the latencies of the last camera switch
+   * (lastSwitchLatency, lastSwitchFirstFrameLatency), the freezeCount and
+   * timeSinceLastFreeze, the errorCount and lastError. Latencies of events
+   * which have not occurred are omitted.
+   */
+  _getCameraMetrics() {
+    if (this.remote || this.kind !== 'video') {
+      return Promise.resolve({});
+    }
+    return new Promise(resolve => {
+      WebRTCModule.mediaStreamTrackGetCameraMetrics(this.id, resolve);
+    });
+  }
+
+  /**
+   * Changes the resolution and / or frame rate of this local video track
+   * without recreating it. Only width, height and frameRate (and their
+   * bounds) are taken into account; the camera is not changed. Values which
+   * are not specified are kept. Android only.
+   *
+   * @param {Object} constraints - MediaTrackConstraints.
+   * @returns {Promise<void>}
+   */
+  applyConstraints(constraints = {}) {
+    if (this.remote || this.kind !== 'video'
+        || typeof WebRTCModule.mediaStreamTrackApplyConstraints !== 'function') {
+      return Promise.reject(new Error('Not implemented.'));
+    }
+
+    // Start from the format requested before rather than from the one
+    // scaled down to the load of the device.
+    const c = Object.assign({ frameRate: this._baseSettings.frameRate }, constraints);
+
+    if (!c.width && !c.height) {
+      c.width = this._baseSettings.width;
+      c.height = this._baseSettings.height;
+    }
+
+    const { video } = RTCUtil.normalizeConstraints({ video: c });
+
+    return new Promise((resolve, reject) => {
+      WebRTCModule.mediaStreamTrackApplyConstraints(this.id, video, (successful, data) => {
+        if (successful) {
+          this._setSettings(data);
+          resolve();
+        } else {
+          reject(new Error(data));
+        }
+      });
+    });
   }
 
   clone() {
@@ -109,12 +263,55 @@ class MediaStreamTrack extends EventTarget(MEDIA_STREAM_TRACK_EVENTS) {
   }
 
   getSettings() {
-    throw new Error('Not implemented.');
+    return Object.assign({}, this._settings);
   }
 
   release() {
+    this._unregisterEvents();
     WebRTCModule.mediaStreamTrackRelease(this.id);
   }
+
+  /**
+   * Removes the native event listeners of this track. Invoked when the track
+   * is stopped or released (by itself or with its MediaStream).
+   */
+  _unregisterEvents() {
+    if (this._loadAdaptationSubscription) {
+      this._loadAdaptationSubscription.remove();
+      this._loadAdaptationSubscription = null;
+    }
+    if (this._captureStateSubscription) {
+      this._captureStateSubscription.remove();
+      this._captureStateSubscription = null;
+    }
+  }
+
+  /**
+   * Merges settings reported by the native side. The format requested by the
+   * constraints (baseWidth, baseHeight and baseFrameRate) is kept apart from
+   * the format the track is fed with (width, height and frameRate), which is
+   * scaled down while the track is adapted to the load of the device.
+   */
+  _setSettings(settings) {
+    const s = Object.assign({}, this._settings, settings);
+    const base = Object.assign({
+      width: s.width,
+      height: s.height,
+      frameRate: s.frameRate
+    }, this._baseSettings);
+
+    if (s.baseWidth !== undefined) {
+      base.width = s.baseWidth;
+      base.height = s.baseHeight;
+      base.frameRate = s.baseFrameRate;
+    }
+
+    delete s.baseWidth;
+    delete s.baseHeight;
+    delete s.baseFrameRate;
+    this._settings = s;
+    this._baseSettings = base;
+  }
 }
 
 export default MediaStreamTrack;
@@ -0,0 +1,50 @@
+'use strict';
+
+import {requireNativeComponent} from 'react-native';
+import PropTypes from 'prop-types';
+
+const RTCCompositorView = {
+  name: 'RTCCompositorView',
+  propTypes: {
+
+    /**
+     * The tiles to render into this view, in drawing order (i.e. later tiles
+     * cover earlier ones). Each tile specifies either the streamURL of a
+     * MediaStream (as RTCView does) or the id of a video track, and a
+     * rectangle in coordinates normalized to the size of this view i.e. from 0
+     * to 1. All tiles are rendered in a single pass into a single surface
+     * which is considerably cheaper than an RTCView per tile.
+     *
+     * Android only.
+     */
+    layout: PropTypes.arrayOf(PropTypes.shape({
+      streamURL: PropTypes.string,
+      trackId: PropTypes.string,
+      x: PropTypes.number,
+      y: PropTypes.number,
+      width: PropTypes.number,
+      height: PropTypes.number,
+      mirror: PropTypes.bool,
+      objectFit: PropTypes.oneOf(['contain', 'cover'])
+    })),
+
+    /**
+     * Specifies the z-order of this view in the fashion of the zOrder of
+     * RTCView. Values greater than 0 place it in the media overlay layer.
+     */
+    zOrder: PropTypes.number
+  },
+};
+
+const View = requireNativeComponent('RTCCompositorView', RTCCompositorView, {nativeOnly: {
+  testID: true,
+  accessibilityComponentType: true,
+  renderToHardwareTextureAndroid: true,
+  accessibilityLabel: true,
+  accessibilityLiveRegion: true,
+  importantForAccessibility: true,
+  onLayout: true,
+  nativeID: true,
+}});
+
+export default View;
@@ -46,6 +46,7 @@ const PEER_CONNECTION_EVENTS = [
   'iceconnectionstatechange',
   'icegatheringstatechange',
   'negotiationneeded',
+  'keyframerequest',
   'signalingstatechange',
   // Peer-to-peer Data API:
   'datachannel',
@@ -305,6 +306,15 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
           track.dispatchEvent(new MediaStreamTrackEvent(eventName, {track}));
         }
       }),
+      DeviceEventEmitter.addListener('peerConnectionKeyFrameRequested', ev => {
+        if (ev.id !== this._peerConnectionId) {
+          return;
+        }
+        const track = this._getTrack(ev.streamReactTag, ev.trackId);
+        if (track) {
+          this.dispatchEvent(new MediaStreamTrackEvent('keyframerequest', {track}));
+        }
+      }),
       DeviceEventEmitter.addListener('peerConnectionGotICECandidate', ev => {
         if (ev.id !== this._peerConnectionId) {
           return;
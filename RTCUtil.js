@@ -59,6 +59,18 @@ function extractNumber(constraints, prop) {
     }
 }
 
+function extractBound(constraints, prop, bound) {
+    const value = constraints[prop];
+
+    if (typeof value === 'object') {
+        for (const v of [ 'exact', bound ]) {
+            if (value[v]) {
+                return Number.parseInt(value[v]);
+            }
+        }
+    }
+}
+
 function normalizeMediaConstraints(constraints, mediaType) {
     switch(mediaType) {
     case 'audio':
@@ -72,7 +84,13 @@ function normalizeMediaConstraints(constraints, mediaType) {
                 facingMode: extractString(constraints, 'facingMode'),
                 frameRate: extractNumber(constraints.mandatory, 'minFrameRate'),
                 height: extractNumber(constraints.mandatory, 'minHeight'),
-                width: extractNumber(constraints.mandatory, 'minWidth')
+                width: extractNumber(constraints.mandatory, 'minWidth'),
+                maxFrameRate: extractNumber(constraints.mandatory, 'maxFrameRate'),
+                maxHeight: extractNumber(constraints.mandatory, 'maxHeight'),
+                maxWidth: extractNumber(constraints.mandatory, 'maxWidth'),
+                minFrameRate: extractNumber(constraints.mandatory, 'minFrameRate'),
+                minHeight: extractNumber(constraints.mandatory, 'minHeight'),
+                minWidth: extractNumber(constraints.mandatory, 'minWidth')
             };
         } else {
             // New style.
@@ -81,14 +99,49 @@ function normalizeMediaConstraints(constraints, mediaType) {
                 facingMode: extractString(constraints, 'facingMode'),
                 frameRate: extractNumber(constraints, 'frameRate'),
                 height: extractNumber(constraints, 'height'),
-                width: extractNumber(constraints, 'width')
+                width: extractNumber(constraints, 'width'),
+                maxFrameRate: extractBound(constraints, 'frameRate', 'max'),
+                maxHeight: extractBound(constraints, 'height', 'max'),
+                maxWidth: extractBound(constraints, 'width', 'max'),
+                minFrameRate: extractBound(constraints, 'frameRate', 'min'),
+                minHeight: extractBound(constraints, 'height', 'min'),
+                minWidth: extractBound(constraints, 'width', 'min')
             };
         }
 
+        // The bounds are optional, the native side picks the supported capture
+        // format closest to the ideal values within them.
+        for (const bound of [ 'maxFrameRate', 'maxHeight', 'maxWidth', 'minFrameRate', 'minHeight', 'minWidth' ]) {
+            if (!c[bound]) {
+                delete c[bound];
+            }
+        }
+
         if (!c.deviceId) {
             delete c.deviceId;
         }
 
+        // Custom: opt into the adaptation of the output format to the load
+        // (thermal status, CPU utilization) of the device.
+        if (constraints.adaptToDeviceLoad) {
+            c.adaptToDeviceLoad = true;
+        }
+
+        // Custom: run the frames through the named native video frame
+        // processors (registered with WebRTCModule.Options) in order.
+        if (Array.isArray(constraints.frameProcessors)) {
+            c.frameProcessors = constraints.frameProcessors.filter(name => typeof name === 'string');
+        }
+
+        // Custom: feed the track from a Y4M file ('file', with filePath) or a
+        // generated pattern ('pattern') instead of a camera, for load testing.
+        if (constraints.source === 'file' || constraints.source === 'pattern') {
+            c.source = constraints.source;
+            if (c.source === 'file') {
+                c.filePath = extractString(constraints, 'filePath');
+            }
+        }
+
         if (!c.facingMode || (c.facingMode !== 'user' && c.facingMode !== 'environment')) {
             c.facingMode = DEFAULT_VIDEO_CONSTRAINTS.facingMode;
         }
@@ -153,6 +206,29 @@ export function normalizeOfferAnswerOptions(options = {}) {
     return newOptions;
 }
 
+/**
+ * Normalize the given getDisplayMedia constraints in something we can work
+ * with. Only video is supported and its width, height and frameRate are
+ * caps rather than targets.
+ */
+export function normalizeDisplayMediaConstraints(constraints) {
+    const video = constraints.video;
+    const c = { video: {} };
+
+    if (typeof video === 'object') {
+        for (const prop of [ 'frameRate', 'height', 'width' ]) {
+            const value
+                = extractBound(video, prop, 'max') || extractNumber(video, prop);
+
+            if (value) {
+                c.video[prop] = value;
+            }
+        }
+    }
+
+    return c;
+}
+
 /**
  * Normalize the given constraints in something we can work with.
  */
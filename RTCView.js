@@ -28,6 +28,40 @@ const RTCView = {
      */
     objectFit: PropTypes.oneOf(['contain', 'cover']),
 
+    /**
+     * Invoked once the first frame of the video has been rendered with the
+     * streamURL and timeToFirstFrame (ms between the start of rendering and
+     * the first drawn frame). Android only.
+     */
+    onFirstFrameRendered: PropTypes.func,
+
+    /**
+     * Invoked periodically (see {@link #renderStatsInterval}) with the
+     * rendering metrics of this RTCView: framesPerSecond, framesReceived,
+     * framesRendered, framesDropped, framesDroppedInInterval, renderLatency
+     * (ms between the delivery of a frame to the renderer and its drawing),
+     * frameAge (ms between the timestamp of a frame and its drawing) and
+     * timeToFirstFrame (ms between the start of rendering and the first drawn
+     * frame or -1). Android only.
+     */
+    onRenderStats: PropTypes.func,
+
+    /**
+     * The interval in milliseconds at which onRenderStats is to be invoked.
+     * Zero (the default) disables the reports. Android only.
+     */
+    renderStatsInterval: PropTypes.number,
+
+    /**
+     * Indicates whether a keyframe is to be requested for the (remote) video
+     * whenever this RTCView starts rendering it, so that it does not stay
+     * black until the next periodic keyframe. The request is delivered as a
+     * 'keyframerequest' event (with the track) on the RTCPeerConnection which
+     * receives the video so that the application may relay it to the sender
+     * (e.g. an SFU) through its signaling. Android only.
+     */
+    requestKeyFrameOnAttach: PropTypes.bool,
+
     streamURL: PropTypes.string,
 
     /**
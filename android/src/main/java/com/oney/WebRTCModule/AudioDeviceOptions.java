@@ -0,0 +1,279 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioRecord;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.audio.AudioDeviceModule;
+import org.webrtc.audio.JavaAudioDeviceModule;
+
+/**
+ * Declares how the {@link JavaAudioDeviceModule} of {@code WebRTCModule} is
+ * to be built: the record and playout sample rates, the hardware acoustic
+ * echo canceler and noise suppressor, stereo input / output and the audio
+ * source. Values which are not set keep the defaults of the builder e.g. the
+ * native output sample rate of the device which allows the low-latency
+ * playout path (if the device has one). Passed to {@code WebRTCModule}
+ * through {@link WebRTCModule.Options#setAudioDeviceOptions}; there is no
+ * JavaScript counterpart because the {@code PeerConnectionFactory} takes the
+ * {@code AudioDeviceModule} when it is created, which happens as soon as the
+ * module is constructed, and a factory cannot swap it later.
+ */
+public class AudioDeviceOptions {
+    /**
+     * The {@link Log} tag with which {@code AudioDeviceOptions} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The factor by which {@code WebRtcAudioRecord} multiplies the minimum
+     * buffer size reported by {@link AudioRecord#getMinBufferSize} when it
+     * creates its {@code AudioRecord}.
+     */
+    private static final int RECORD_BUFFER_SIZE_FACTOR = 2;
+
+    private int inputSampleRate;
+    private int outputSampleRate;
+    private Boolean useHardwareAcousticEchoCanceler;
+    private Boolean useHardwareNoiseSuppressor;
+    private boolean useStereoInput;
+    private boolean useStereoOutput;
+    private Integer audioSource;
+
+    public AudioDeviceOptions() {}
+
+    /**
+     * Sets the sample rate to record at. Zero (the default) for the native
+     * sample rate of the device.
+     */
+    public AudioDeviceOptions setInputSampleRate(int inputSampleRate) {
+        this.inputSampleRate = inputSampleRate;
+        return this;
+    }
+
+    /**
+     * Sets the sample rate to play out at. Zero (the default) for the native
+     * sample rate of the device, which is required for the low-latency
+     * playout path.
+     */
+    public AudioDeviceOptions setOutputSampleRate(int outputSampleRate) {
+        this.outputSampleRate = outputSampleRate;
+        return this;
+    }
+
+    /**
+     * Sets whether the hardware acoustic echo canceler is to be used (if the
+     * device has one) instead of the software one.
+     */
+    public AudioDeviceOptions setUseHardwareAcousticEchoCanceler(boolean use) {
+        this.useHardwareAcousticEchoCanceler = use;
+        return this;
+    }
+
+    /**
+     * Sets whether the hardware noise suppressor is to be used (if the device
+     * has one) instead of the software one.
+     */
+    public AudioDeviceOptions setUseHardwareNoiseSuppressor(boolean use) {
+        this.useHardwareNoiseSuppressor = use;
+        return this;
+    }
+
+    public AudioDeviceOptions setUseStereoInput(boolean useStereoInput) {
+        this.useStereoInput = useStereoInput;
+        return this;
+    }
+
+    public AudioDeviceOptions setUseStereoOutput(boolean useStereoOutput) {
+        this.useStereoOutput = useStereoOutput;
+        return this;
+    }
+
+    /**
+     * Sets the {@code MediaRecorder.AudioSource} to record from. Defaults to
+     * {@code VOICE_COMMUNICATION}.
+     */
+    public AudioDeviceOptions setAudioSource(int audioSource) {
+        this.audioSource = audioSource;
+        return this;
+    }
+
+    /**
+     * Creates a {@link JavaAudioDeviceModule} with these options.
+     *
+     * @param samplesReadyCallback the callback to deliver the recorded
+     * samples to
+     */
+    AudioDeviceModule createAudioDeviceModule(
+            Context context,
+            JavaAudioDeviceModule.SamplesReadyCallback samplesReadyCallback) {
+        JavaAudioDeviceModule.Builder builder
+            = JavaAudioDeviceModule.builder(context)
+                .setSamplesReadyCallback(samplesReadyCallback);
+
+        if (inputSampleRate > 0) {
+            builder.setInputSampleRate(inputSampleRate);
+        }
+        if (outputSampleRate > 0) {
+            builder.setOutputSampleRate(outputSampleRate);
+        }
+        if (useHardwareAcousticEchoCanceler != null) {
+            builder.setUseHardwareAcousticEchoCanceler(
+                useHardwareAcousticEchoCanceler
+                    && JavaAudioDeviceModule.isBuiltInAcousticEchoCancelerSupported());
+        }
+        if (useHardwareNoiseSuppressor != null) {
+            builder.setUseHardwareNoiseSuppressor(
+                useHardwareNoiseSuppressor
+                    && JavaAudioDeviceModule.isBuiltInNoiseSuppressorSupported());
+        }
+        if (audioSource != null) {
+            builder.setAudioSource(audioSource);
+        }
+
+        return builder
+            .setUseStereoInput(useStereoInput)
+            .setUseStereoOutput(useStereoOutput)
+            .createAudioDeviceModule();
+    }
+
+    /**
+     * Describes the audio device module built with specific options (or with
+     * the defaults if {@code null}) on this device: the sample rates, the use
+     * of the hardware effects, the support of the low-latency / pro audio
+     * paths and the latency of the record and playout buffers in
+     * milliseconds. The buffer latencies are derived from the minimum buffer
+     * sizes of {@code AudioRecord} and {@code AudioTrack}, which the module
+     * uses, and are lower bounds of the mouth-to-ear delay on the device.
+     */
+    static WritableMap getInfo(Context context, AudioDeviceOptions options) {
+        WritableMap info = Arguments.createMap();
+        int nativeSampleRate = 0;
+        int framesPerBuffer = 0;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            AudioManager audioManager
+                = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+
+            nativeSampleRate
+                = parseInt(
+                    audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE));
+            framesPerBuffer
+                = parseInt(
+                    audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER));
+        }
+        if (nativeSampleRate <= 0) {
+            nativeSampleRate = 16000;
+        }
+
+        int inputSampleRate = nativeSampleRate;
+        int outputSampleRate = nativeSampleRate;
+        boolean stereoInput = false;
+        boolean stereoOutput = false;
+        boolean hardwareAec = JavaAudioDeviceModule.isBuiltInAcousticEchoCancelerSupported();
+        boolean hardwareNs = JavaAudioDeviceModule.isBuiltInNoiseSuppressorSupported();
+
+        if (options != null) {
+            if (options.inputSampleRate > 0) {
+                inputSampleRate = options.inputSampleRate;
+            }
+            if (options.outputSampleRate > 0) {
+                outputSampleRate = options.outputSampleRate;
+            }
+            stereoInput = options.useStereoInput;
+            stereoOutput = options.useStereoOutput;
+            if (options.useHardwareAcousticEchoCanceler != null) {
+                hardwareAec &= options.useHardwareAcousticEchoCanceler;
+            }
+            if (options.useHardwareNoiseSuppressor != null) {
+                hardwareNs &= options.useHardwareNoiseSuppressor;
+            }
+        }
+
+        PackageManager packageManager = context.getPackageManager();
+
+        info.putInt("nativeSampleRate", nativeSampleRate);
+        info.putInt("inputSampleRate", inputSampleRate);
+        info.putInt("outputSampleRate", outputSampleRate);
+        info.putBoolean("stereoInput", stereoInput);
+        info.putBoolean("stereoOutput", stereoOutput);
+        info.putBoolean("hardwareAcousticEchoCanceler", hardwareAec);
+        info.putBoolean("hardwareNoiseSuppressor", hardwareNs);
+        info.putBoolean(
+            "lowLatencySupported",
+            packageManager != null
+                && packageManager.hasSystemFeature(PackageManager.FEATURE_AUDIO_LOW_LATENCY));
+        info.putBoolean(
+            "proAudioSupported",
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                && packageManager != null
+                && packageManager.hasSystemFeature(PackageManager.FEATURE_AUDIO_PRO));
+        // The low-latency playout path requires the native sample rate.
+        info.putBoolean("lowLatencyPlayout", outputSampleRate == nativeSampleRate);
+        if (framesPerBuffer > 0) {
+            info.putInt("framesPerBuffer", framesPerBuffer);
+        }
+
+        try {
+            int playoutBufferSize
+                = AudioTrack.getMinBufferSize(
+                    outputSampleRate,
+                    stereoOutput
+                        ? AudioFormat.CHANNEL_OUT_STEREO
+                        : AudioFormat.CHANNEL_OUT_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT);
+            int recordBufferSize
+                = AudioRecord.getMinBufferSize(
+                    inputSampleRate,
+                    stereoInput
+                        ? AudioFormat.CHANNEL_IN_STEREO
+                        : AudioFormat.CHANNEL_IN_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT);
+
+            if (playoutBufferSize > 0) {
+                info.putDouble(
+                    "playoutBufferLatency",
+                    bufferSizeToMs(playoutBufferSize, outputSampleRate, stereoOutput));
+            }
+            if (recordBufferSize > 0) {
+                // WebRtcAudioRecord allocates a multiple of the minimum size.
+                info.putDouble(
+                    "recordBufferLatency",
+                    bufferSizeToMs(
+                        RECORD_BUFFER_SIZE_FACTOR * recordBufferSize,
+                        inputSampleRate,
+                        stereoInput));
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to get the audio buffer sizes", e);
+        }
+
+        return info;
+    }
+
+    /**
+     * Converts a size in bytes of a 16-bit PCM buffer to its duration in
+     * milliseconds.
+     */
+    private static double bufferSizeToMs(int size, int sampleRate, boolean stereo) {
+        int bytesPerFrame = 2 * (stereo ? 2 : 1);
+
+        return size * 1000.0 / (bytesPerFrame * sampleRate);
+    }
+
+    private static int parseInt(String s) {
+        try {
+            return s == null ? 0 : Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.webrtc.AudioTrack;
+import org.webrtc.MediaStreamTrack;
+import org.webrtc.PeerConnection;
+import org.webrtc.StatsReport;
+import org.webrtc.audio.JavaAudioDeviceModule;
+
+/**
+ * Meters the audio levels of the local and remote audio tracks natively and
+ * reports only the changes which matter for active speaker detection: a
+ * {@code audioLevelMonitorSpeakingChanged} event when the smoothed level of a
+ * track crosses the threshold (with hysteresis) and a
+ * {@code audioLevelMonitorActiveSpeakersChanged} event when the list of the
+ * loudest tracks above the threshold changes. The level of the local tracks
+ * is the peak level of the microphone samples delivered by the
+ * {@code JavaAudioDeviceModule}; the level of a remote track is the
+ * {@code audioOutputLevel} of statistics requested for that track alone
+ * rather than for the whole {@code PeerConnection}. Levels are in the range
+ * [0, 1].
+ */
+class AudioLevelMonitor implements JavaAudioDeviceModule.SamplesReadyCallback {
+    /**
+     * The {@link Log} tag with which {@code AudioLevelMonitor} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The defaults of the options of {@link #start}.
+     */
+    private static final int DEFAULT_INTERVAL = 200;
+    private static final double DEFAULT_THRESHOLD = 0.05;
+    private static final int DEFAULT_MAX_SPEAKERS = 3;
+
+    /**
+     * The weight of a new level in the smoothed level.
+     */
+    private static final double SMOOTHING = 0.4;
+
+    /**
+     * The share of the threshold below which a speaking track has to fall in
+     * order to be considered silent.
+     */
+    private static final double HYSTERESIS = 0.6;
+
+    /**
+     * The smoothed level of a track and whether it is above the threshold.
+     */
+    private static class TrackLevel {
+        double level;
+        boolean speaking;
+    }
+
+    private final WebRTCModule webRTCModule;
+
+    private final Map<String, TrackLevel> levels = new HashMap<>();
+
+    private List<String> activeSpeakers = Collections.emptyList();
+
+    private Timer timer;
+    private double threshold;
+    private int maxSpeakers;
+
+    /**
+     * Whether the monitor is running. Read on the audio thread in order to
+     * not compute the level of the microphone samples in vain.
+     */
+    private volatile boolean running;
+
+    /**
+     * The peak level of the microphone samples since the last sample of the
+     * levels.
+     */
+    private volatile double microphoneLevel;
+
+    AudioLevelMonitor(WebRTCModule webRTCModule) {
+        this.webRTCModule = webRTCModule;
+    }
+
+    /**
+     * Starts (or restarts with new options) metering. Invoked on the
+     * executor.
+     *
+     * @param options {@code interval} in milliseconds, {@code threshold} and
+     * {@code maxSpeakers} i.e. the length of the active speaker list
+     */
+    void start(ReadableMap options) {
+        stop();
+
+        int interval = Math.max(50, getInt(options, "interval", DEFAULT_INTERVAL));
+
+        threshold = getDouble(options, "threshold", DEFAULT_THRESHOLD);
+        maxSpeakers = getInt(options, "maxSpeakers", DEFAULT_MAX_SPEAKERS);
+        running = true;
+        timer = new Timer("AudioLevelTimer", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                ThreadUtils.runOnExecutor(AudioLevelMonitor.this::sample);
+            }
+        }, interval, interval);
+
+        Log.d(TAG, "Started audio level monitor every " + interval + " ms");
+    }
+
+    /**
+     * Stops metering. Invoked on the executor.
+     */
+    void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        running = false;
+        levels.clear();
+        activeSpeakers = Collections.emptyList();
+    }
+
+    @Override
+    public void onWebRtcAudioRecordSamplesReady(JavaAudioDeviceModule.AudioSamples samples) {
+        if (!running) {
+            return;
+        }
+
+        // 16-bit little-endian PCM.
+        byte[] data = samples.getData();
+        int peak = 0;
+
+        for (int i = 0; i + 1 < data.length; i += 2) {
+            int sample = (short) ((data[i] & 0xff) | (data[i + 1] << 8));
+
+            peak = Math.max(peak, Math.abs(sample));
+        }
+
+        microphoneLevel = Math.max(microphoneLevel, Math.min(1, peak / 32767.0));
+    }
+
+    /**
+     * Samples the levels of all audio tracks and reports the changes. Runs on
+     * the executor.
+     */
+    private void sample() {
+        if (!running) {
+            return;
+        }
+
+        Set<String> trackIds = new HashSet<>();
+        double localLevel = microphoneLevel;
+
+        microphoneLevel = 0;
+        for (String trackId : webRTCModule.getLocalAudioTrackIds()) {
+            trackIds.add(trackId);
+            update(trackId, localLevel);
+        }
+
+        for (PeerConnectionObserver pco : webRTCModule.getPeerConnectionObservers()) {
+            PeerConnection peerConnection = pco.getPeerConnection();
+
+            if (peerConnection == null) {
+                continue;
+            }
+            for (MediaStreamTrack track : new ArrayList<>(pco.remoteTracks.values())) {
+                if (track instanceof AudioTrack) {
+                    trackIds.add(track.id());
+                    requestLevel(peerConnection, track);
+                }
+            }
+        }
+
+        // Forget the tracks which are gone.
+        levels.keySet().retainAll(trackIds);
+
+        updateActiveSpeakers();
+    }
+
+    /**
+     * Requests the {@code audioOutputLevel} of a specific remote track. The
+     * level is taken into account when it arrives.
+     */
+    private void requestLevel(PeerConnection peerConnection, MediaStreamTrack track) {
+        String trackId = track.id();
+
+        try {
+            peerConnection.getStats(reports -> {
+                for (StatsReport report : reports) {
+                    if (!"ssrc".equals(report.type)) {
+                        continue;
+                    }
+                    for (StatsReport.Value value : report.values) {
+                        if ("audioOutputLevel".equals(value.name)) {
+                            double level = parseLevel(value.value);
+
+                            ThreadUtils.runOnExecutor(() -> {
+                                if (running) {
+                                    update(trackId, level);
+                                }
+                            });
+                            return;
+                        }
+                    }
+                }
+            }, track);
+        } catch (RuntimeException e) {
+            // The track may have been disposed of in the meantime.
+        }
+    }
+
+    /**
+     * Smooths a new level of a specific track and reports a crossing of the
+     * threshold.
+     */
+    private void update(String trackId, double level) {
+        TrackLevel trackLevel = levels.get(trackId);
+
+        if (trackLevel == null) {
+            trackLevel = new TrackLevel();
+            levels.put(trackId, trackLevel);
+        }
+
+        trackLevel.level = SMOOTHING * level + (1 - SMOOTHING) * trackLevel.level;
+
+        boolean speaking
+            = trackLevel.speaking
+                ? trackLevel.level >= threshold * HYSTERESIS
+                : trackLevel.level >= threshold;
+
+        if (speaking != trackLevel.speaking) {
+            trackLevel.speaking = speaking;
+
+            WritableMap params = Arguments.createMap();
+            params.putString("trackId", trackId);
+            params.putBoolean("speaking", speaking);
+            params.putDouble("level", trackLevel.level);
+            webRTCModule.sendEvent("audioLevelMonitorSpeakingChanged", params);
+        }
+    }
+
+    /**
+     * Reports the loudest speaking tracks if they have changed.
+     */
+    private void updateActiveSpeakers() {
+        List<Map.Entry<String, TrackLevel>> speaking = new ArrayList<>();
+
+        for (Map.Entry<String, TrackLevel> e : levels.entrySet()) {
+            if (e.getValue().speaking) {
+                speaking.add(e);
+            }
+        }
+        Collections.sort(
+            speaking,
+            (a, b) -> Double.compare(b.getValue().level, a.getValue().level));
+
+        List<String> speakers = new ArrayList<>();
+
+        for (int i = 0; i < speaking.size() && i < maxSpeakers; i++) {
+            speakers.add(speaking.get(i).getKey());
+        }
+
+        if (speakers.equals(activeSpeakers)) {
+            return;
+        }
+        activeSpeakers = speakers;
+
+        WritableArray trackIds = Arguments.createArray();
+
+        for (String trackId : speakers) {
+            trackIds.pushString(trackId);
+        }
+
+        WritableMap params = Arguments.createMap();
+        params.putArray("trackIds", trackIds);
+        webRTCModule.sendEvent("audioLevelMonitorActiveSpeakersChanged", params);
+    }
+
+    /**
+     * Parses an {@code audioOutputLevel} (in the range [0, 32767]).
+     */
+    private static double parseLevel(String s) {
+        try {
+            return Math.min(1, Math.max(0, Double.parseDouble(s) / 32767));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int getInt(ReadableMap map, String key, int fallback) {
+        return map != null && map.hasKey(key) && !map.isNull(key)
+            ? map.getInt(key)
+            : fallback;
+    }
+
+    private static double getDouble(ReadableMap map, String key, double fallback) {
+        return map != null && map.hasKey(key) && !map.isNull(key)
+            ? map.getDouble(key)
+            : fallback;
+    }
+}
@@ -0,0 +1,222 @@
+package com.oney.WebRTCModule;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.webrtc.AudioTrack;
+import org.webrtc.PeerConnection;
+import org.webrtc.StatsReport;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimerTask;
+
+/**
+ * Implements mute/unmute events for remote audio tracks, the audio
+ * counterpart of {@link VideoTrackAdapter}. There are no audio frames to
+ * count so the statistics of each track are polled on the timer shared with
+ * {@code VideoTrackAdapter}: a track is muted when no packets have been
+ * received for {@link #MUTE_DELAY} ms (3000ms initially) or when the received
+ * audio has been digital silence (e.g. the remote track is disabled) for
+ * {@link #SILENCE_MUTE_DELAY} ms.
+ */
+public class AudioTrackAdapter {
+    static final String TAG = AudioTrackAdapter.class.getCanonicalName();
+    static final long INITIAL_MUTE_DELAY = 3000;
+    static final long MUTE_DELAY = 1500;
+    static final long SILENCE_MUTE_DELAY = 5000;
+
+    private Map<String, TrackMuteUnmuteImpl> muteImplMap = new HashMap<>();
+
+    private final int peerConnectionId;
+
+    private final PeerConnectionObserver peerConnectionObserver;
+
+    private final WebRTCModule webRTCModule;
+
+    public AudioTrackAdapter(
+            WebRTCModule webRTCModule,
+            PeerConnectionObserver peerConnectionObserver,
+            int peerConnectionId) {
+        this.peerConnectionId = peerConnectionId;
+        this.peerConnectionObserver = peerConnectionObserver;
+        this.webRTCModule = webRTCModule;
+    }
+
+    public void addAdapter(String streamReactTag, AudioTrack audioTrack) {
+        String trackId = audioTrack.id();
+        if (!muteImplMap.containsKey(trackId)) {
+            TrackMuteUnmuteImpl onMuteImpl
+                = new TrackMuteUnmuteImpl(streamReactTag, audioTrack);
+            Log.d(TAG, "Created adapter for " + trackId);
+            muteImplMap.put(trackId, onMuteImpl);
+            onMuteImpl.start();
+        } else {
+            Log.w(
+                TAG, "Attempted to add adapter twice for track ID: " + trackId);
+        }
+    }
+
+    public void removeAdapter(AudioTrack audioTrack) {
+        String trackId = audioTrack.id();
+        TrackMuteUnmuteImpl onMuteImpl = muteImplMap.remove(trackId);
+        if (onMuteImpl != null) {
+            onMuteImpl.dispose();
+            Log.d(TAG, "Deleted adapter for " + trackId);
+        } else {
+            Log.w(TAG, "removeAdapter - no adapter for " + trackId);
+        }
+    }
+
+    /**
+     * Implements 'mute'/'unmute' events for a remote audio track by polling
+     * the {@code packetsReceived} and {@code audioOutputLevel} of its
+     * statistics.
+     */
+    private class TrackMuteUnmuteImpl {
+        private TimerTask emitMuteTask;
+        private volatile boolean disposed;
+        private boolean mutedState;
+        private final String streamReactTag;
+        private final AudioTrack track;
+        private final String trackId;
+
+        /**
+         * The number of packets received as of the last statistics and the
+         * times (in {@link SystemClock#elapsedRealtime()} milliseconds) at
+         * which that number last increased and at which the audio was last
+         * not silent. Accessed on the thread which delivers the statistics.
+         */
+        private long packetsReceived;
+        private long lastPacketTime;
+        private long lastSoundTime;
+
+        TrackMuteUnmuteImpl(String streamReactTag, AudioTrack track) {
+            this.streamReactTag = streamReactTag;
+            this.track = track;
+            this.trackId = track.id();
+        }
+
+        private void start() {
+            if (disposed) {
+                return;
+            }
+
+            synchronized (this) {
+                if (emitMuteTask != null) {
+                    emitMuteTask.cancel();
+                }
+
+                // Give the track the initial delay to receive its first
+                // packets.
+                long now = SystemClock.elapsedRealtime();
+
+                lastPacketTime = now + INITIAL_MUTE_DELAY - MUTE_DELAY;
+                lastSoundTime = now;
+
+                emitMuteTask = new TimerTask() {
+                    @Override
+                    public void run() {
+                        if (!disposed) {
+                            requestStats();
+                        }
+                    }
+                };
+                VideoTrackAdapter.timer.schedule(
+                    emitMuteTask, MUTE_DELAY, MUTE_DELAY);
+            }
+        }
+
+        private void requestStats() {
+            PeerConnection peerConnection
+                = peerConnectionObserver.getPeerConnection();
+
+            if (peerConnection == null) {
+                return;
+            }
+
+            try {
+                peerConnection.getStats(this::onStats, track);
+            } catch (RuntimeException e) {
+                // The track may have been disposed of in the meantime.
+            }
+        }
+
+        private synchronized void onStats(StatsReport[] reports) {
+            if (disposed) {
+                return;
+            }
+
+            for (StatsReport report : reports) {
+                if (!"ssrc".equals(report.type)) {
+                    continue;
+                }
+
+                long now = SystemClock.elapsedRealtime();
+
+                for (StatsReport.Value value : report.values) {
+                    if ("packetsReceived".equals(value.name)) {
+                        long packets = parseLong(value.value);
+
+                        if (packets > packetsReceived) {
+                            lastPacketTime = now;
+                            packetsReceived = packets;
+                        }
+                    } else if ("audioOutputLevel".equals(value.name)) {
+                        if (parseLong(value.value) > 0) {
+                            lastSoundTime = now;
+                        }
+                    }
+                }
+
+                boolean isMuted
+                    = now - lastPacketTime >= MUTE_DELAY
+                        || now - lastSoundTime >= SILENCE_MUTE_DELAY;
+
+                if (isMuted != mutedState) {
+                    mutedState = isMuted;
+                    emitMuteEvent(isMuted);
+                }
+                return;
+            }
+        }
+
+        private void emitMuteEvent(boolean muted) {
+            WritableMap params = Arguments.createMap();
+            params.putInt("peerConnectionId", peerConnectionId);
+            params.putString("streamReactTag", streamReactTag);
+            params.putString("trackId", trackId);
+            params.putBoolean("muted", muted);
+
+            Log.d(TAG,
+                (muted ? "Mute" : "Unmute" )
+                    + " event pcId: " + peerConnectionId
+                    + " streamTag: " + streamReactTag
+                    + " trackId: " + trackId);
+
+            AudioTrackAdapter.this.webRTCModule.sendEvent(
+                "mediaStreamTrackMuteChanged", params);
+        }
+
+        void dispose() {
+            disposed = true;
+            synchronized (this) {
+                if (emitMuteTask != null) {
+                    emitMuteTask.cancel();
+                    emitMuteTask = null;
+                }
+            }
+        }
+    }
+
+    private static long parseLong(String s) {
+        try {
+            return s == null ? 0 : Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.hardware.Camera;
+import android.hardware.camera2.CameraManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.webrtc.Camera2Enumerator;
+import org.webrtc.CameraEnumerator;
+
+/**
+ * Caches the enumeration of the camera devices so that
+ * {@code enumerateDevices} does not have to query every camera device (which
+ * involves slow binder calls on Camera1 devices) on every call. The cache is
+ * kept up to date by {@link CameraManager.AvailabilityCallback} on Camera2
+ * devices and by polling the number of cameras on Camera1 devices. Changes are
+ * reported to a listener so that a {@code devicechange} event may be fired.
+ */
+class CameraDeviceCache {
+    /**
+     * The {@link Log} tag with which {@code CameraDeviceCache} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The interval in milliseconds at which the number of cameras is polled
+     * on Camera1 devices.
+     */
+    private static final long CAMERA1_POLL_INTERVAL = 5000;
+
+    /**
+     * A cached camera device.
+     */
+    private static class Device {
+        final String name;
+        final boolean frontFacing;
+
+        Device(String name, boolean frontFacing) {
+            this.name = name;
+            this.frontFacing = frontFacing;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Device)) {
+                return false;
+            }
+
+            Device other = (Device) obj;
+
+            return name.equals(other.name) && frontFacing == other.frontFacing;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + (frontFacing ? 1 : 0);
+        }
+    }
+
+    private final CameraEnumerator cameraEnumerator;
+
+    /**
+     * The camera devices as of the last refresh or {@code null} if the cache
+     * has not been populated yet. Replaced rather than mutated.
+     */
+    private volatile List<Device> devices;
+
+    /**
+     * Whether a refresh has been scheduled on the executor and has not run
+     * yet. Coalesces bursts of availability callbacks (one is delivered for
+     * every camera upon registration).
+     */
+    private boolean refreshPending;
+
+    private final Runnable onDeviceChange;
+
+    /**
+     * Monitors the camera devices on Camera2 devices.
+     */
+    private CameraManager cameraManager;
+    private CameraManager.AvailabilityCallback availabilityCallback;
+
+    /**
+     * Polls the number of cameras on Camera1 devices.
+     */
+    private Timer pollTimer;
+
+    /**
+     * Initializes a new {@code CameraDeviceCache} and starts monitoring the
+     * camera devices.
+     *
+     * @param context the {@code Context} to get the {@code CameraManager} from
+     * @param cameraEnumerator the {@code CameraEnumerator} to enumerate the
+     * camera devices with
+     * @param onDeviceChange invoked on the executor whenever the set of
+     * camera devices has changed after the cache was first populated
+     */
+    CameraDeviceCache(
+            Context context,
+            CameraEnumerator cameraEnumerator,
+            Runnable onDeviceChange) {
+        this.cameraEnumerator = cameraEnumerator;
+        this.onDeviceChange = onDeviceChange;
+
+        scheduleRefresh();
+
+        if (cameraEnumerator instanceof Camera2Enumerator
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            cameraManager
+                = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+            availabilityCallback = new CameraManager.AvailabilityCallback() {
+                @Override
+                public void onCameraAvailable(String cameraId) {
+                    scheduleRefresh();
+                }
+
+                @Override
+                public void onCameraUnavailable(String cameraId) {
+                    scheduleRefresh();
+                }
+            };
+            cameraManager.registerAvailabilityCallback(
+                availabilityCallback,
+                new Handler(Looper.getMainLooper()));
+        } else {
+            pollTimer = new Timer("CameraDevicePollTimer", true);
+            pollTimer.schedule(new TimerTask() {
+                private int lastNumberOfCameras = -1;
+
+                @Override
+                public void run() {
+                    int numberOfCameras = Camera.getNumberOfCameras();
+
+                    if (lastNumberOfCameras != -1
+                            && numberOfCameras != lastNumberOfCameras) {
+                        scheduleRefresh();
+                    }
+                    lastNumberOfCameras = numberOfCameras;
+                }
+            }, CAMERA1_POLL_INTERVAL, CAMERA1_POLL_INTERVAL);
+        }
+    }
+
+    /**
+     * Stops monitoring the camera devices. Invoked when the module is torn
+     * down.
+     */
+    void dispose() {
+        if (availabilityCallback != null) {
+            cameraManager.unregisterAvailabilityCallback(availabilityCallback);
+            availabilityCallback = null;
+        }
+        if (pollTimer != null) {
+            pollTimer.cancel();
+            pollTimer = null;
+        }
+    }
+
+    /**
+     * Gets the cached camera devices in the format of {@code enumerateDevices}.
+     * Populates the cache if it has not been populated yet. Must be invoked
+     * on the executor.
+     */
+    WritableArray getDevices() {
+        List<Device> devices = getCachedDevices();
+        WritableArray array = Arguments.createArray();
+
+        for (int i = 0; i < devices.size(); ++i) {
+            Device device = devices.get(i);
+            WritableMap params = Arguments.createMap();
+
+            params.putString("facing", device.frontFacing ? "front" : "environment");
+            params.putString("deviceId", "" + i);
+            params.putString("groupId", "");
+            params.putString("label", device.name);
+            params.putString("kind", "videoinput");
+            array.pushMap(params);
+        }
+
+        return array;
+    }
+
+    /**
+     * Gets the name of the camera device which {@link VideoCaptureController}
+     * picks for specific constraints provided that it can be opened: the one
+     * with the specified ID or else the first one with the specified facing
+     * or else the first one. Must be invoked on the executor.
+     *
+     * @return the name of the camera device or {@code null} if there is no
+     * camera
+     */
+    String getDeviceName(String deviceId, String facingMode) {
+        List<Device> devices = getCachedDevices();
+        boolean frontFacing
+            = facingMode == null || !facingMode.equals("environment");
+
+        for (Device device : devices) {
+            if (device.name.equals(deviceId)) {
+                return device.name;
+            }
+        }
+        for (Device device : devices) {
+            if (device.frontFacing == frontFacing) {
+                return device.name;
+            }
+        }
+
+        return devices.isEmpty() ? null : devices.get(0).name;
+    }
+
+    /**
+     * Gets the cached camera devices, populating the cache if it has not been
+     * populated yet. Must be invoked on the executor.
+     */
+    private List<Device> getCachedDevices() {
+        List<Device> devices = this.devices;
+
+        if (devices == null) {
+            refresh();
+            devices = this.devices;
+        }
+
+        return devices;
+    }
+
+    private synchronized void scheduleRefresh() {
+        if (!refreshPending) {
+            refreshPending = true;
+            ThreadUtils.runOnExecutor(this::refresh);
+        }
+    }
+
+    /**
+     * Enumerates the camera devices anew and notifies
+     * {@link #onDeviceChange} if they differ from the cached ones. Runs on
+     * the executor.
+     */
+    private void refresh() {
+        synchronized (this) {
+            refreshPending = false;
+        }
+
+        List<Device> newDevices = new ArrayList<>();
+
+        for (String name : cameraEnumerator.getDeviceNames()) {
+            try {
+                // This can throw an exception when using the Camera 1 API.
+                newDevices.add(
+                    new Device(name, cameraEnumerator.isFrontFacing(name)));
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to check the facing mode of camera " + name);
+            }
+        }
+
+        List<Device> oldDevices = devices;
+
+        devices = Collections.unmodifiableList(newDevices);
+
+        if (oldDevices != null && !oldDevices.equals(newDevices)) {
+            Log.d(TAG, "Camera devices changed");
+            onDeviceChange.run();
+        }
+    }
+}
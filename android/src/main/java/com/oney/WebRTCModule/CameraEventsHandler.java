@@ -1,58 +1,243 @@
 package com.oney.WebRTCModule;
 
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
 import org.webrtc.CameraVideoCapturer;
+import org.webrtc.CapturerObserver;
+import org.webrtc.VideoFrame;
 
-class CameraEventsHandler implements CameraVideoCapturer.CameraEventsHandler {
+/**
+ * Logs the events of a camera capturer and records the timing of its
+ * pipeline: how long after capturing was requested the camera started
+ * opening, was opened (i.e. the capturer reported that it started) and
+ * delivered its first frame, how long camera switches took and how often the
+ * camera froze. Each {@code VideoCaptureController} has its own instance
+ * which is also added to its {@link CapturerObserver}s in order to track the
+ * time of the last frame and which reports freezes and errors to a
+ * {@link StallListener}. The callbacks are invoked on the camera thread
+ * whereas the metrics are queried on the executor.
+ */
+class CameraEventsHandler
+    implements CameraVideoCapturer.CameraEventsHandler, CapturerObserver {
     /**
      * The {@link Log} tag with which {@code CameraEventsHandler} is to log.
      */
     private final static String TAG = WebRTCModule.TAG;
 
+    /**
+     * Interface implemented by the {@code VideoCaptureController} which
+     * recovers the capturer when the camera stalls.
+     */
+    interface StallListener {
+        /**
+         * Invoked on the camera thread when the camera reports that it froze,
+         * failed or got disconnected.
+         *
+         * @param reason {@code freeze}, {@code error} or {@code disconnected}
+         */
+        void onCameraStalled(String reason);
+    }
+
+    private final StallListener stallListener;
+
+    /**
+     * The times (in {@link SystemClock#elapsedRealtime()} milliseconds) at
+     * which capturing was last requested and at which the camera started
+     * opening, was opened and delivered its first frame afterwards. Zero if
+     * the respective event has not occurred (yet).
+     */
+    private long captureRequestedTime;
+    private long cameraOpeningTime;
+    private long cameraOpenedTime;
+    private long firstFrameTime;
+
+    /**
+     * The times at which the last camera switch started and completed and at
+     * which the camera delivered its first frame afterwards.
+     */
+    private long switchStartedTime;
+    private long switchDoneTime;
+    private long switchFirstFrameTime;
+    private int switchCount;
+
+    private int freezeCount;
+    private long lastFreezeTime;
+
+    private int errorCount;
+    private String lastError;
+
+    /**
+     * The time at which the last frame was captured since the last capture
+     * request. Zero if no frame has been captured since. Updated for every
+     * frame and, consequently, not guarded by the monitor.
+     */
+    private volatile long lastFrameTime;
+
+    CameraEventsHandler(StallListener stallListener) {
+        this.stallListener = stallListener;
+    }
+
+    /**
+     * Records that capturing is (re)starting. Invoked by
+     * {@code VideoCaptureController} right before it starts the capturer.
+     */
+    synchronized void onCaptureRequested() {
+        captureRequestedTime = SystemClock.elapsedRealtime();
+        cameraOpeningTime = 0;
+        cameraOpenedTime = 0;
+        firstFrameTime = 0;
+        lastFrameTime = 0;
+    }
+
+    synchronized long getCaptureRequestedTime() {
+        return captureRequestedTime;
+    }
+
+    long getLastFrameTime() {
+        return lastFrameTime;
+    }
+
+    /**
+     * Records that a camera switch is starting. Invoked by
+     * {@code VideoCaptureController}.
+     */
+    synchronized void onCameraSwitchStarted() {
+        switchStartedTime = SystemClock.elapsedRealtime();
+        switchDoneTime = 0;
+        switchFirstFrameTime = 0;
+        switchCount++;
+    }
+
+    /**
+     * Records that a camera switch has completed (successfully or not).
+     * Invoked by {@code VideoCaptureController}.
+     */
+    synchronized void onCameraSwitchDone() {
+        if (switchStartedTime != 0 && switchDoneTime == 0) {
+            switchDoneTime = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Gets the metrics recorded so far in milliseconds. The latencies are
+     * relative to the last capture request and to the start of the last
+     * camera switch respectively; the ones of events which have not occurred
+     * are omitted.
+     */
+    synchronized WritableMap getMetrics() {
+        WritableMap metrics = Arguments.createMap();
+
+        putLatency(metrics, "openingLatency", captureRequestedTime, cameraOpeningTime);
+        putLatency(metrics, "openLatency", captureRequestedTime, cameraOpenedTime);
+        putLatency(metrics, "firstFrameLatency", captureRequestedTime, firstFrameTime);
+        metrics.putInt("switchCount", switchCount);
+        putLatency(metrics, "lastSwitchLatency", switchStartedTime, switchDoneTime);
+        putLatency(
+            metrics, "lastSwitchFirstFrameLatency", switchStartedTime, switchFirstFrameTime);
+        metrics.putInt("freezeCount", freezeCount);
+        if (lastFreezeTime != 0) {
+            metrics.putDouble(
+                "timeSinceLastFreeze", SystemClock.elapsedRealtime() - lastFreezeTime);
+        }
+        metrics.putInt("errorCount", errorCount);
+        if (lastError != null) {
+            metrics.putString("lastError", lastError);
+        }
+
+        return metrics;
+    }
+
+    private static void putLatency(WritableMap map, String key, long start, long end) {
+        if (start != 0 && end >= start) {
+            map.putDouble(key, end - start);
+        }
+    }
+
     // Callback invoked when camera closed.
     @Override
     public void onCameraClosed() {
-        Log.d(TAG, "CameraEventsHandler.onFirstFrameAvailable");
+        Log.d(TAG, "CameraEventsHandler.onCameraClosed");
     }
 
     // Called when camera is disconnected.
     @Override
     public void onCameraDisconnected() {
         Log.d(TAG, "CameraEventsHandler.onCameraDisconnected");
+        stallListener.onCameraStalled("disconnected");
     }
 
     // Camera error handler - invoked when camera can not be opened or any
     // camera exception happens on camera thread.
     @Override
-    public void onCameraError(String errorDescription) {
+    public synchronized void onCameraError(String errorDescription) {
         Log.d(
             TAG,
             "CameraEventsHandler.onCameraError: errorDescription="
                 + errorDescription);
+        errorCount++;
+        lastError = errorDescription;
+        stallListener.onCameraStalled("error");
     }
 
     // Invoked when camera stops receiving frames
     @Override
-    public void onCameraFreezed(String errorDescription) {
+    public synchronized void onCameraFreezed(String errorDescription) {
         Log.d(
             TAG,
             "CameraEventsHandler.onCameraFreezed: errorDescription="
                 + errorDescription);
+        freezeCount++;
+        lastFreezeTime = SystemClock.elapsedRealtime();
+        stallListener.onCameraStalled("freeze");
     }
 
     // Callback invoked when camera is opening.
     @Override
-    public void onCameraOpening(String cameraName) {
+    public synchronized void onCameraOpening(String cameraName) {
         Log.d(
             TAG,
             "CameraEventsHandler.onCameraOpening: cameraName="
                 + cameraName);
+        if (cameraOpeningTime == 0) {
+            cameraOpeningTime = SystemClock.elapsedRealtime();
+        }
     }
 
     // Callback invoked when first camera frame is available after camera is opened.
     @Override
-    public void onFirstFrameAvailable() {
+    public synchronized void onFirstFrameAvailable() {
         Log.d(TAG, "CameraEventsHandler.onFirstFrameAvailable");
+        long now = SystemClock.elapsedRealtime();
+
+        if (firstFrameTime == 0) {
+            firstFrameTime = now;
+        }
+        if (switchStartedTime != 0 && switchFirstFrameTime == 0) {
+            switchFirstFrameTime = now;
+        }
+    }
+
+    // Callback invoked when the capturer has started i.e. the camera has been
+    // opened and configured. Completes a camera switch which replaced the
+    // capturer.
+    @Override
+    public synchronized void onCapturerStarted(boolean success) {
+        if (success && cameraOpenedTime == 0) {
+            cameraOpenedTime = SystemClock.elapsedRealtime();
+        }
+        onCameraSwitchDone();
+    }
+
+    @Override
+    public void onCapturerStopped() {
+    }
+
+    @Override
+    public void onFrameCaptured(VideoFrame frame) {
+        lastFrameTime = SystemClock.elapsedRealtime();
     }
 }
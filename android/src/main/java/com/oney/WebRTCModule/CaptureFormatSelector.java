@@ -0,0 +1,217 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.webrtc.CameraEnumerationAndroid.CaptureFormat;
+import org.webrtc.CameraEnumerator;
+
+/**
+ * Picks the native capture format of a camera device which best satisfies
+ * specific video constraints so that the camera delivers frames which do not
+ * have to be scaled down by WebRTC. The formats supported by each camera
+ * device are queried once only and cached because querying them may require
+ * opening the camera.
+ */
+class CaptureFormatSelector {
+    /**
+     * The {@link Log} tag with which {@code CaptureFormatSelector} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The supported capture formats of the camera devices by device name.
+     */
+    private static final Map<String, List<CaptureFormat>> formatsCache
+        = new HashMap<>();
+
+    /**
+     * A video capture format i.e. a width, a height and a frame rate.
+     */
+    static class Format {
+        final int width;
+        final int height;
+        final int fps;
+
+        Format(int width, int height, int fps) {
+            this.width = width;
+            this.height = height;
+            this.fps = fps;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + "@" + fps;
+        }
+    }
+
+    /**
+     * The ideal width, height and frame rate and their (optional) bounds as
+     * specified by video constraints normalized by {@code RTCUtil.js}.
+     */
+    private final int width;
+    private final int height;
+    private final int fps;
+    private final int minWidth;
+    private final int maxWidth;
+    private final int minHeight;
+    private final int maxHeight;
+    private final int minFps;
+    private final int maxFps;
+
+    CaptureFormatSelector(ReadableMap constraints) {
+        width = constraints.getInt("width");
+        height = constraints.getInt("height");
+        fps = constraints.getInt("frameRate");
+        minWidth = getInt(constraints, "minWidth", 0);
+        maxWidth = getInt(constraints, "maxWidth", Integer.MAX_VALUE);
+        minHeight = getInt(constraints, "minHeight", 0);
+        maxHeight = getInt(constraints, "maxHeight", Integer.MAX_VALUE);
+        minFps = getInt(constraints, "minFrameRate", 0);
+        maxFps = getInt(constraints, "maxFrameRate", Integer.MAX_VALUE);
+    }
+
+    /**
+     * Initializes a selector for a format which covers a specific format
+     * i.e. which is at least as large and at least as fast. The bounds are
+     * relaxed by {@link #select} if no supported format covers it.
+     */
+    CaptureFormatSelector(Format required) {
+        width = minWidth = required.width;
+        height = minHeight = required.height;
+        fps = minFps = required.fps;
+        maxWidth = Integer.MAX_VALUE;
+        maxHeight = Integer.MAX_VALUE;
+        maxFps = Integer.MAX_VALUE;
+    }
+
+    private static int getInt(ReadableMap map, String key, int fallback) {
+        return map.hasKey(key) && !map.isNull(key) ? map.getInt(key) : fallback;
+    }
+
+    /**
+     * Gets the capture formats supported by a specific camera device,
+     * querying them only if they have not been queried before.
+     */
+    private static List<CaptureFormat> getSupportedFormats(
+            CameraEnumerator cameraEnumerator,
+            String deviceName) {
+        synchronized (formatsCache) {
+            List<CaptureFormat> formats = formatsCache.get(deviceName);
+
+            if (formats == null) {
+                try {
+                    formats = cameraEnumerator.getSupportedFormats(deviceName);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to get the formats of camera " + deviceName, e);
+                }
+                if (formats == null) {
+                    formats = Collections.emptyList();
+                }
+                formatsCache.put(deviceName, formats);
+            }
+
+            return formats;
+        }
+    }
+
+    /**
+     * Selects the supported capture format of a specific camera device which
+     * is closest to the ideal width, height and frame rate while honoring
+     * their bounds. If no supported format is within the bounds, the bounds
+     * are relaxed rather than failing. If the supported formats are unknown,
+     * the ideal values are returned as they are.
+     *
+     * @param cameraEnumerator the {@code CameraEnumerator} of the device
+     * @param deviceName the name of the camera device
+     * @return the {@code Format} to start capturing with
+     */
+    Format select(CameraEnumerator cameraEnumerator, String deviceName) {
+        Format ideal = new Format(width, height, fps);
+
+        if (deviceName == null) {
+            return ideal;
+        }
+
+        List<CaptureFormat> formats
+            = getSupportedFormats(cameraEnumerator, deviceName);
+        CaptureFormat best = null;
+        double bestDistance = Double.MAX_VALUE;
+
+        for (boolean bounded : new boolean[] { true, false }) {
+            for (CaptureFormat format : formats) {
+                if (bounded && !isWithinBounds(format)) {
+                    continue;
+                }
+
+                double distance = distance(format);
+
+                if (distance < bestDistance
+                        || (distance == bestDistance
+                            && format.frameSize() < best.frameSize())) {
+                    best = format;
+                    bestDistance = distance;
+                }
+            }
+            if (best != null) {
+                break;
+            }
+        }
+
+        if (best == null) {
+            return ideal;
+        }
+
+        Format selected = new Format(best.width, best.height, getFps(best));
+
+        Log.d(TAG, "Selected capture format " + selected
+            + " of camera " + deviceName + " for " + ideal);
+
+        return selected;
+    }
+
+    private boolean isWithinBounds(CaptureFormat format) {
+        return format.width >= minWidth && format.width <= maxWidth
+            && format.height >= minHeight && format.height <= maxHeight
+            && format.framerate.max >= minFps * 1000
+            && format.framerate.min <= maxFps * 1000L;
+    }
+
+    /**
+     * Measures how far a specific format is from the ideal one. The area is
+     * compared on a logarithmic scale so that twice and half the ideal area
+     * are equally far. Falling short of the ideal frame rate counts as much
+     * as a twofold difference in area per halving.
+     */
+    private double distance(CaptureFormat format) {
+        double areaDistance
+            = Math.abs(
+                Math.log(
+                    (format.width * (double) format.height)
+                        / Math.max(1, width * height)));
+        double formatFps = Math.min(getFps(format), fps);
+        double fpsDistance
+            = formatFps < fps ? Math.log(fps / Math.max(1, formatFps)) : 0;
+
+        return areaDistance + fpsDistance;
+    }
+
+    /**
+     * Gets the frame rate to capture with from a specific format i.e. the
+     * ideal frame rate clamped to the range of the format and the bounds.
+     */
+    private int getFps(CaptureFormat format) {
+        int fps = Math.min(this.fps, maxFps);
+
+        fps = Math.min(fps, format.framerate.max / 1000);
+        fps = Math.max(fps, (format.framerate.min + 999) / 1000);
+
+        return fps;
+    }
+}
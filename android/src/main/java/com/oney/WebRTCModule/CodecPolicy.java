@@ -0,0 +1,390 @@
+package com.oney.WebRTCModule;
+
+import android.media.MediaCodecInfo;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.webrtc.EglBase;
+import org.webrtc.HardwareVideoDecoderFactory;
+import org.webrtc.HardwareVideoEncoderFactory;
+import org.webrtc.PlatformSoftwareVideoDecoderFactory;
+import org.webrtc.Predicate;
+import org.webrtc.SoftwareVideoDecoderFactory;
+import org.webrtc.SoftwareVideoEncoderFactory;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoDecoder;
+import org.webrtc.VideoDecoderFactory;
+import org.webrtc.VideoDecoderFallback;
+import org.webrtc.VideoEncoder;
+import org.webrtc.VideoEncoderFactory;
+import org.webrtc.VideoEncoderFallback;
+
+/**
+ * Declares which video codecs the default video encoder / decoder factories
+ * of {@code WebRTCModule} offer, in which order and how: the preferred codec
+ * order, the H.264 High profile and Intel VP8 hardware encoders, the hardware
+ * (i.e. {@code MediaCodec}) codecs allowed or denied (on all or specific
+ * devices) and when the software codecs are used instead. The defaults match
+ * {@code DefaultVideoEncoderFactory} / {@code DefaultVideoDecoderFactory}.
+ * Passed to {@code WebRTCModule} through
+ * {@link WebRTCModule.Options#setCodecPolicy}.
+ */
+public class CodecPolicy {
+    /**
+     * A rule which applies to the hardware codecs the names of which start
+     * with a specific prefix (e.g. {@code OMX.qcom.} or
+     * {@code c2.exynos.}) on all devices or on a specific one.
+     */
+    private static class HardwareCodecRule {
+        final String codecNamePrefix;
+        final String device;
+
+        HardwareCodecRule(String codecNamePrefix, String device) {
+            this.codecNamePrefix = codecNamePrefix;
+            this.device = device;
+        }
+
+        /**
+         * Determines whether this rule applies to this device i.e. whether
+         * its device is unspecified or matches the model, the device or the
+         * manufacturer of this device.
+         */
+        boolean appliesToThisDevice() {
+            return device == null
+                || device.equalsIgnoreCase(Build.MODEL)
+                || device.equalsIgnoreCase(Build.DEVICE)
+                || device.equalsIgnoreCase(Build.MANUFACTURER);
+        }
+
+        boolean matches(MediaCodecInfo info) {
+            return info.getName().startsWith(codecNamePrefix);
+        }
+
+        @Override
+        public String toString() {
+            return codecNamePrefix + "@" + device;
+        }
+    }
+
+    private final List<String> preferredCodecs = new ArrayList<>();
+    private boolean enableIntelVp8Encoder = true;
+    private boolean enableH264HighProfile = false;
+    private final List<HardwareCodecRule> hardwareCodecAllowRules = new ArrayList<>();
+    private final List<HardwareCodecRule> hardwareCodecDenyRules = new ArrayList<>();
+    private boolean softwareFallback = true;
+    private final Set<String> softwareOnlyCodecs = new HashSet<>();
+
+    public CodecPolicy() {}
+
+    /**
+     * Sets the names of the codecs (e.g. {@code VP9}, {@code H264}) to be
+     * offered first, in order of preference. The other codecs follow in their
+     * default order.
+     */
+    public CodecPolicy setPreferredCodecs(String... codecNames) {
+        preferredCodecs.clear();
+        for (String codecName : codecNames) {
+            preferredCodecs.add(codecName.toUpperCase(Locale.ROOT));
+        }
+        return this;
+    }
+
+    public CodecPolicy setEnableIntelVp8Encoder(boolean enableIntelVp8Encoder) {
+        this.enableIntelVp8Encoder = enableIntelVp8Encoder;
+        return this;
+    }
+
+    /**
+     * Sets whether the H.264 Constrained High profile is to be offered (on
+     * devices the hardware encoder of which supports it).
+     */
+    public CodecPolicy setEnableH264HighProfile(boolean enableH264HighProfile) {
+        this.enableH264HighProfile = enableH264HighProfile;
+        return this;
+    }
+
+    /**
+     * Allows the hardware codecs the names of which start with a specific
+     * prefix on all devices. Once a hardware codec is allowed on a device,
+     * only the allowed ones are used on that device.
+     */
+    public CodecPolicy allowHardwareCodec(String codecNamePrefix) {
+        return allowHardwareCodec(codecNamePrefix, null);
+    }
+
+    /**
+     * Allows the hardware codecs the names of which start with a specific
+     * prefix on a specific device (a {@code Build.MODEL},
+     * {@code Build.DEVICE} or {@code Build.MANUFACTURER}).
+     */
+    public CodecPolicy allowHardwareCodec(String codecNamePrefix, String device) {
+        hardwareCodecAllowRules.add(new HardwareCodecRule(codecNamePrefix, device));
+        return this;
+    }
+
+    /**
+     * Denies the hardware codecs the names of which start with a specific
+     * prefix on all devices.
+     */
+    public CodecPolicy denyHardwareCodec(String codecNamePrefix) {
+        return denyHardwareCodec(codecNamePrefix, null);
+    }
+
+    /**
+     * Denies the hardware codecs the names of which start with a specific
+     * prefix on a specific device (a {@code Build.MODEL},
+     * {@code Build.DEVICE} or {@code Build.MANUFACTURER}).
+     */
+    public CodecPolicy denyHardwareCodec(String codecNamePrefix, String device) {
+        hardwareCodecDenyRules.add(new HardwareCodecRule(codecNamePrefix, device));
+        return this;
+    }
+
+    /**
+     * Sets whether a hardware codec is to fall back to the software one (if
+     * any) when it fails. Defaults to {@code true}.
+     */
+    public CodecPolicy setSoftwareFallback(boolean softwareFallback) {
+        this.softwareFallback = softwareFallback;
+        return this;
+    }
+
+    /**
+     * Sets the names of the codecs (e.g. {@code H264}) which are to use the
+     * software codecs only, not the hardware ones. A codec without a software
+     * implementation is then not offered at all.
+     */
+    public CodecPolicy setSoftwareOnlyCodecs(String... codecNames) {
+        softwareOnlyCodecs.clear();
+        for (String codecName : codecNames) {
+            softwareOnlyCodecs.add(codecName.toUpperCase(Locale.ROOT));
+        }
+        return this;
+    }
+
+    /**
+     * Creates a video encoder factory which implements this policy.
+     *
+     * @param eglContext the EGL context the hardware encoders are to use or
+     * {@code null} to only list the supported codecs
+     */
+    VideoEncoderFactory createVideoEncoderFactory(EglBase.Context eglContext) {
+        return new PolicyVideoEncoderFactory(
+            new HardwareVideoEncoderFactory(
+                eglContext,
+                enableIntelVp8Encoder,
+                enableH264HighProfile,
+                createHardwareCodecPredicate()));
+    }
+
+    /**
+     * Creates a video decoder factory which implements this policy.
+     *
+     * @param eglContext the EGL context the hardware decoders are to use or
+     * {@code null} to only list the supported codecs
+     */
+    VideoDecoderFactory createVideoDecoderFactory(EglBase.Context eglContext) {
+        return new PolicyVideoDecoderFactory(
+            new HardwareVideoDecoderFactory(
+                eglContext,
+                createHardwareCodecPredicate()),
+            new PlatformSoftwareVideoDecoderFactory(eglContext));
+    }
+
+    /**
+     * Gets a key which identifies the codecs this policy lists on this device
+     * for the purposes of {@link VideoCodecCache}.
+     */
+    String getKey() {
+        List<HardwareCodecRule> allowRules = getRulesForThisDevice(hardwareCodecAllowRules);
+        List<HardwareCodecRule> denyRules = getRulesForThisDevice(hardwareCodecDenyRules);
+        List<String> softwareOnly = new ArrayList<>(softwareOnlyCodecs);
+
+        Collections.sort(softwareOnly);
+
+        return preferredCodecs
+            + "/" + enableIntelVp8Encoder
+            + "/" + enableH264HighProfile
+            + "/" + allowRules
+            + "/" + denyRules
+            + "/" + softwareOnly;
+    }
+
+    private Predicate<MediaCodecInfo> createHardwareCodecPredicate() {
+        List<HardwareCodecRule> allowRules = getRulesForThisDevice(hardwareCodecAllowRules);
+        List<HardwareCodecRule> denyRules = getRulesForThisDevice(hardwareCodecDenyRules);
+
+        return info -> {
+            for (HardwareCodecRule rule : denyRules) {
+                if (rule.matches(info)) {
+                    return false;
+                }
+            }
+            if (allowRules.isEmpty()) {
+                return true;
+            }
+            for (HardwareCodecRule rule : allowRules) {
+                if (rule.matches(info)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private static List<HardwareCodecRule> getRulesForThisDevice(
+            List<HardwareCodecRule> rules) {
+        List<HardwareCodecRule> rulesForThisDevice = new ArrayList<>();
+
+        for (HardwareCodecRule rule : rules) {
+            if (rule.appliesToThisDevice()) {
+                rulesForThisDevice.add(rule);
+            }
+        }
+
+        return rulesForThisDevice;
+    }
+
+    private boolean isSoftwareOnly(VideoCodecInfo info) {
+        return softwareOnlyCodecs.contains(info.name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Lists the supported codecs of multiple factories (in order and without
+     * duplicates) in the preferred codec order.
+     */
+    private VideoCodecInfo[] getSupportedCodecs(
+            VideoCodecInfo[] softwareCodecs,
+            VideoCodecInfo[]... hardwareCodecs) {
+        LinkedHashSet<VideoCodecInfo> codecs
+            = new LinkedHashSet<>(Arrays.asList(softwareCodecs));
+
+        for (VideoCodecInfo[] infos : hardwareCodecs) {
+            for (VideoCodecInfo info : infos) {
+                if (!isSoftwareOnly(info)) {
+                    codecs.add(info);
+                }
+            }
+        }
+
+        List<VideoCodecInfo> orderedCodecs = new ArrayList<>();
+
+        for (String codecName : preferredCodecs) {
+            for (VideoCodecInfo info : codecs) {
+                if (codecName.equalsIgnoreCase(info.name)) {
+                    orderedCodecs.add(info);
+                }
+            }
+        }
+        for (VideoCodecInfo info : codecs) {
+            if (!orderedCodecs.contains(info)) {
+                orderedCodecs.add(info);
+            }
+        }
+
+        return orderedCodecs.toArray(new VideoCodecInfo[0]);
+    }
+
+    /**
+     * Combines the hardware and the software encoders like
+     * {@code DefaultVideoEncoderFactory} does but according to the policy.
+     */
+    private class PolicyVideoEncoderFactory implements VideoEncoderFactory {
+        private final VideoEncoderFactory hardwareFactory;
+        private final VideoEncoderFactory softwareFactory
+            = new SoftwareVideoEncoderFactory();
+
+        PolicyVideoEncoderFactory(VideoEncoderFactory hardwareFactory) {
+            this.hardwareFactory = hardwareFactory;
+        }
+
+        @Override
+        public VideoEncoder createEncoder(VideoCodecInfo info) {
+            if (isSoftwareOnly(info)) {
+                return softwareFactory.createEncoder(info);
+            }
+
+            VideoEncoder hardwareEncoder = hardwareFactory.createEncoder(info);
+
+            if (hardwareEncoder == null) {
+                return softwareFactory.createEncoder(info);
+            }
+            if (softwareFallback) {
+                VideoEncoder softwareEncoder = softwareFactory.createEncoder(info);
+
+                if (softwareEncoder != null) {
+                    return new VideoEncoderFallback(
+                        /* fallback */ softwareEncoder, /* primary */ hardwareEncoder);
+                }
+            }
+            return hardwareEncoder;
+        }
+
+        @Override
+        public VideoCodecInfo[] getSupportedCodecs() {
+            return CodecPolicy.this.getSupportedCodecs(
+                softwareFactory.getSupportedCodecs(),
+                hardwareFactory.getSupportedCodecs());
+        }
+    }
+
+    /**
+     * Combines the hardware, the platform software and the software decoders
+     * like {@code DefaultVideoDecoderFactory} does but according to the
+     * policy.
+     */
+    private class PolicyVideoDecoderFactory implements VideoDecoderFactory {
+        private final VideoDecoderFactory hardwareFactory;
+        private final VideoDecoderFactory platformSoftwareFactory;
+        private final VideoDecoderFactory softwareFactory
+            = new SoftwareVideoDecoderFactory();
+
+        PolicyVideoDecoderFactory(
+                VideoDecoderFactory hardwareFactory,
+                VideoDecoderFactory platformSoftwareFactory) {
+            this.hardwareFactory = hardwareFactory;
+            this.platformSoftwareFactory = platformSoftwareFactory;
+        }
+
+        @Override
+        public VideoDecoder createDecoder(VideoCodecInfo info) {
+            if (isSoftwareOnly(info)) {
+                return softwareFactory.createDecoder(info);
+            }
+
+            VideoDecoder hardwareDecoder = hardwareFactory.createDecoder(info);
+
+            if (hardwareDecoder == null) {
+                hardwareDecoder = platformSoftwareFactory.createDecoder(info);
+            }
+            if (hardwareDecoder == null) {
+                return softwareFactory.createDecoder(info);
+            }
+            if (softwareFallback) {
+                VideoDecoder softwareDecoder = softwareFactory.createDecoder(info);
+
+                if (softwareDecoder != null) {
+                    return new VideoDecoderFallback(
+                        /* fallback */ softwareDecoder, /* primary */ hardwareDecoder);
+                }
+            }
+            return hardwareDecoder;
+        }
+
+        @Override
+        public VideoCodecInfo[] getSupportedCodecs() {
+            return CodecPolicy.this.getSupportedCodecs(
+                softwareFactory.getSupportedCodecs(),
+                hardwareFactory.getSupportedCodecs(),
+                platformSoftwareFactory.getSupportedCodecs());
+        }
+    }
+}
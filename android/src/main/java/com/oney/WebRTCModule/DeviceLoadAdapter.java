@@ -0,0 +1,294 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.StatsReport;
+import org.webrtc.VideoTrack;
+
+/**
+ * Degrades (and restores) the output format of local video tracks which opted
+ * in (with the {@code adaptToDeviceLoad} video constraint) according to the
+ * load of the device: the thermal status (API level 29+), the CPU utilization
+ * of the process and whether the encoder reports being CPU limited. The
+ * format is stepped down a ladder of resolution and frame rate scales through
+ * {@link VideoCaptureController#setTrackScale} with hysteresis i.e. stepping
+ * down requires sustained overuse and stepping up requires a longer period of
+ * sustained underuse. Each step is reported with a
+ * {@code mediaStreamTrackLoadAdaptationChanged} event.
+ */
+class DeviceLoadAdapter {
+    /**
+     * The {@link Log} tag with which {@code DeviceLoadAdapter} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The interval in milliseconds at which the load is sampled.
+     */
+    private static final long SAMPLE_INTERVAL = 2000;
+
+    /**
+     * The number of consecutive overused / underused samples after which a
+     * step down / up is taken.
+     */
+    private static final int STEP_DOWN_SAMPLES = 2;
+    private static final int STEP_UP_SAMPLES = 8;
+
+    /**
+     * The CPU utilization (of all cores) of the process above which the device
+     * is considered overused and below which it is considered underused.
+     */
+    private static final double CPU_OVERUSE = 0.85;
+    private static final double CPU_UNDERUSE = 0.5;
+
+    /**
+     * The ladder of resolution and frame rate scales. Resolution is reduced
+     * first because encoders save more on pixels than on frames.
+     */
+    private static final float[] RESOLUTION_SCALES
+        = { 1f, 0.75f, 0.5f, 0.5f, 0.375f };
+    private static final float[] FPS_SCALES
+        = { 1f, 1f, 1f, 0.67f, 0.5f };
+
+    /**
+     * The state of a single track which opted in.
+     */
+    private static class TrackState {
+        final VideoTrack track;
+        final VideoCaptureController videoCaptureController;
+        int level;
+        int overusedSamples;
+        int underusedSamples;
+
+        /**
+         * Whether the encoder of the track reported being CPU limited in the
+         * last statistics. Updated asynchronously.
+         */
+        volatile boolean encoderLimited;
+
+        TrackState(VideoTrack track, VideoCaptureController videoCaptureController) {
+            this.track = track;
+            this.videoCaptureController = videoCaptureController;
+        }
+    }
+
+    private final Map<String, TrackState> tracks = new HashMap<>();
+
+    private final PowerManager powerManager;
+
+    private final WebRTCModule webRTCModule;
+
+    private Timer timer;
+
+    private long lastCpuTime;
+    private long lastSampleTime;
+
+    DeviceLoadAdapter(WebRTCModule webRTCModule, Context context) {
+        this.webRTCModule = webRTCModule;
+        this.powerManager
+            = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    /**
+     * Starts adapting a specific local video track. Invoked on the executor.
+     */
+    void addTrack(VideoTrack track, VideoCaptureController videoCaptureController) {
+        tracks.put(track.id(), new TrackState(track, videoCaptureController));
+
+        if (timer == null) {
+            lastCpuTime = Process.getElapsedCpuTime();
+            lastSampleTime = SystemClock.elapsedRealtime();
+            timer = new Timer("DeviceLoadTimer", true);
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    ThreadUtils.runOnExecutor(DeviceLoadAdapter.this::sample);
+                }
+            }, SAMPLE_INTERVAL, SAMPLE_INTERVAL);
+        }
+    }
+
+    /**
+     * Stops adapting a specific local video track. Invoked on the executor.
+     */
+    void removeTrack(String trackId) {
+        if (tracks.remove(trackId) != null && tracks.isEmpty()) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    boolean hasTrack(String trackId) {
+        return tracks.containsKey(trackId);
+    }
+
+    /**
+     * Samples the load of the device and steps the tracks up or down if
+     * necessary. Runs on the executor.
+     */
+    private void sample() {
+        if (timer == null) {
+            return;
+        }
+
+        int thermalStatus = getThermalStatus();
+        double cpuUsage = getCpuUsage();
+
+        for (TrackState state : tracks.values()) {
+            String reason = null;
+
+            if (thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE) {
+                reason = "thermal";
+            } else if (cpuUsage > CPU_OVERUSE) {
+                reason = "cpu";
+            } else if (state.encoderLimited) {
+                reason = "encoder";
+            }
+
+            if (reason != null) {
+                state.underusedSamples = 0;
+                if (++state.overusedSamples >= STEP_DOWN_SAMPLES
+                        && state.level < RESOLUTION_SCALES.length - 1) {
+                    setLevel(state, state.level + 1, reason);
+                }
+            } else {
+                state.overusedSamples = 0;
+                if (thermalStatus <= PowerManager.THERMAL_STATUS_LIGHT
+                        && cpuUsage < CPU_UNDERUSE
+                        && ++state.underusedSamples >= STEP_UP_SAMPLES
+                        && state.level > 0) {
+                    setLevel(state, state.level - 1, "recovered");
+                }
+            }
+
+            requestEncoderStats(state);
+        }
+    }
+
+    private void setLevel(TrackState state, int level, String reason) {
+        state.level = level;
+        state.overusedSamples = 0;
+        state.underusedSamples = 0;
+
+        String trackId = state.track.id();
+        WritableMap settings
+            = state.videoCaptureController.setTrackScale(
+                trackId, RESOLUTION_SCALES[level], FPS_SCALES[level]);
+
+        if (settings == null) {
+            return;
+        }
+
+        Log.d(TAG, "Load adaptation of track " + trackId
+            + " at level " + level + " (" + reason + ")");
+
+        WritableMap params = Arguments.createMap();
+        params.putString("trackId", trackId);
+        params.putInt("level", level);
+        params.putString("reason", reason);
+        params.putMap("settings", settings);
+        webRTCModule.sendEvent("mediaStreamTrackLoadAdaptationChanged", params);
+    }
+
+    private int getThermalStatus() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null) {
+            return powerManager.getCurrentThermalStatus();
+        }
+        return PowerManager.THERMAL_STATUS_NONE;
+    }
+
+    /**
+     * Gets the CPU utilization of this process (over all cores) since the
+     * previous invocation.
+     */
+    private double getCpuUsage() {
+        long cpuTime = Process.getElapsedCpuTime();
+        long sampleTime = SystemClock.elapsedRealtime();
+        long elapsed = sampleTime - lastSampleTime;
+        double usage
+            = elapsed > 0
+                ? (cpuTime - lastCpuTime)
+                    / (double) (elapsed * Runtime.getRuntime().availableProcessors())
+                : 0;
+
+        lastCpuTime = cpuTime;
+        lastSampleTime = sampleTime;
+
+        return usage;
+    }
+
+    /**
+     * Asks the {@code PeerConnection}s which send a specific track whether
+     * its encoder is CPU limited. The answer is taken into account by the
+     * next sample.
+     */
+    private void requestEncoderStats(TrackState state) {
+        state.encoderLimited = false;
+
+        for (PeerConnection peerConnection : webRTCModule.getPeerConnections()) {
+            try {
+                peerConnection.getStats(reports -> {
+                    for (StatsReport report : reports) {
+                        if (isEncoderLimited(report)) {
+                            state.encoderLimited = true;
+                        }
+                    }
+                }, state.track);
+            } catch (RuntimeException e) {
+                // The PeerConnection may not be sending the track.
+            }
+        }
+    }
+
+    private static boolean isEncoderLimited(StatsReport report) {
+        if (!"ssrc".equals(report.type)) {
+            return false;
+        }
+
+        double frameRateInput = -1;
+        double frameRateSent = -1;
+
+        for (StatsReport.Value value : report.values) {
+            switch (value.name) {
+            case "googCpuLimitedResolution":
+                if ("true".equals(value.value)) {
+                    return true;
+                }
+                break;
+            case "googFrameRateInput":
+                frameRateInput = parseDouble(value.value);
+                break;
+            case "googFrameRateSent":
+                frameRateSent = parseDouble(value.value);
+                break;
+            }
+        }
+
+        // The encoder drops a significant share of the captured frames.
+        return frameRateInput > 0
+            && frameRateSent >= 0
+            && frameRateSent < frameRateInput * 0.7;
+    }
+
+    private static double parseDouble(String s) {
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -3,9 +3,28 @@ package com.oney.WebRTCModule;
 import android.util.Log;
 import android.os.Build.VERSION;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import org.webrtc.EglBase;
 
 public class EglUtils {
+    /**
+     * The {@link Log} tag with which {@code EglUtils} is to log.
+     */
+    private static final String TAG = EglUtils.class.getName();
+
+    /**
+     * The value of {@link #eglVersion} before EGL has been probed.
+     */
+    private static final int EGL_NOT_PROBED = -1;
+
+    /**
+     * The value of {@link #eglVersion} if neither {@link EglBase14} nor
+     * {@link EglBase10} could be initialized.
+     */
+    private static final int EGL_UNAVAILABLE = 0;
+
     /**
      * The root {@link EglBase} instance shared by the entire application for
      * the sake of reducing the utilization of system resources (such as EGL
@@ -14,53 +33,206 @@ public class EglUtils {
      */
     private static EglBase rootEglBase;
 
+    /**
+     * The result of probing EGL i.e. {@code 14} if {@link EglBase14} is to be
+     * used, {@code 10} if {@link EglBase10} is to be used,
+     * {@link #EGL_UNAVAILABLE} if neither works or {@link #EGL_NOT_PROBED}.
+     * Cached so that the (expensive) probe is performed once only.
+     */
+    private static int eglVersion = EGL_NOT_PROBED;
+
+    /**
+     * The {@link RootEglContextListener}s to be notified when
+     * {@link #rootEglBase} gets rebuilt.
+     */
+    private static final List<RootEglContextListener> listeners
+        = new CopyOnWriteArrayList<>();
+
+    /**
+     * Interface implemented by users of the root {@link EglBase.Context} which
+     * have to reinitialize themselves when it gets rebuilt (e.g. after it has
+     * been lost).
+     */
+    public interface RootEglContextListener {
+        /**
+         * Invoked after the root {@link EglBase} has been rebuilt. Invoked on
+         * the thread which rebuilt it.
+         *
+         * @param eglContext the new root {@code EglBase.Context}
+         */
+        void onRootEglContextChanged(EglBase.Context eglContext);
+    }
+
+    public static void addRootEglContextListener(RootEglContextListener l) {
+        if (!listeners.contains(l)) {
+            listeners.add(l);
+        }
+    }
+
+    public static void removeRootEglContextListener(RootEglContextListener l) {
+        listeners.remove(l);
+    }
+
     /**
      * Lazily creates and returns the one and only {@link EglBase} which will
-     * serve as the root for all contexts that are needed.
+     * serve as the root for all contexts that are needed. If EGL has been
+     * found to be unavailable, returns {@code null} without probing again.
      */
     public static synchronized EglBase getRootEglBase() {
-        if (rootEglBase == null) {
-            // XXX EglBase14 will report that isEGL14Supported() but its
-            // getEglConfig() will fail with a RuntimeException with message
-            // "Unable to find any matching EGL config". Fall back to EglBase10
-            // in the described scenario.
-            EglBase eglBase = null;
-            int[] configAttributes = EglBase.CONFIG_PLAIN;
-            RuntimeException cause = null;
+        if (rootEglBase == null && eglVersion == EGL_NOT_PROBED) {
+            rootEglBase = createRootEglBase();
+        }
+
+        return rootEglBase;
+    }
+
+    public static EglBase.Context getRootEglBaseContext() {
+        EglBase eglBase = getRootEglBase();
+
+        return eglBase == null ? null : eglBase.getEglBaseContext();
+    }
+
+    /**
+     * Determines whether the root {@link EglBase.Context} exists and is
+     * usable i.e. a context sharing with it can be created and made current.
+     * Does not create the root {@code EglBase} if it does not exist yet.
+     */
+    public static boolean isRootEglContextHealthy() {
+        EglBase.Context eglContext;
+
+        synchronized (EglUtils.class) {
+            if (rootEglBase == null) {
+                return false;
+            }
+            eglContext = rootEglBase.getEglBaseContext();
+        }
+
+        EglBase eglBase = null;
+
+        try {
+            eglBase = EglBase.create(eglContext, EglBase.CONFIG_PIXEL_BUFFER);
+            eglBase.createDummyPbufferSurface();
+            eglBase.makeCurrent();
+            eglBase.detachCurrent();
+            return true;
+        } catch (RuntimeException ex) {
+            Log.w(TAG, "The root EGL context is not usable", ex);
+            return false;
+        } finally {
+            if (eglBase != null) {
+                eglBase.release();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the root {@link EglBase} if it is missing or is not healthy.
+     *
+     * @return {@code true} if the root {@code EglBase} is usable upon return;
+     * otherwise, {@code false}
+     */
+    public static boolean recoverRootEglBase() {
+        return isRootEglContextHealthy() || rebuildRootEglBase();
+    }
+
+    /**
+     * Releases the root {@link EglBase}, creates a new one and notifies the
+     * registered {@link RootEglContextListener}s so that they may move on to
+     * the new context. Unlike {@link #getRootEglBase()}, probes EGL again if a
+     * previous probe failed.
+     *
+     * @return {@code true} if a new root {@code EglBase} was created;
+     * otherwise, {@code false}
+     */
+    public static boolean rebuildRootEglBase() {
+        EglBase oldEglBase;
+        EglBase newEglBase;
+
+        synchronized (EglUtils.class) {
+            if (eglVersion == EGL_UNAVAILABLE) {
+                eglVersion = EGL_NOT_PROBED;
+            }
+            newEglBase = createRootEglBase();
+            if (newEglBase == null) {
+                return false;
+            }
+            oldEglBase = rootEglBase;
+            rootEglBase = newEglBase;
+        }
 
+        Log.d(TAG, "Rebuilt the root EglBase");
+
+        EglBase.Context eglContext = newEglBase.getEglBaseContext();
+
+        for (RootEglContextListener l : listeners) {
+            try {
+                l.onRootEglContextChanged(eglContext);
+            } catch (Throwable tr) {
+                Log.e(TAG, "RootEglContextListener failed", tr);
+            }
+        }
+
+        // EGL share groups outlive the contexts which created them so the old
+        // root may be released even if some of its users have not moved on
+        // yet.
+        if (oldEglBase != null) {
+            try {
+                oldEglBase.release();
+            } catch (RuntimeException ex) {
+                Log.w(TAG, "Failed to release the old root EglBase", ex);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates a new {@link EglBase} suitable to serve as the root. Probes
+     * {@link EglBase14} and {@link EglBase10} (in this order) if that has not
+     * been done yet and caches the result in {@link #eglVersion}.
+     */
+    private static EglBase createRootEglBase() {
+        // XXX EglBase14 will report that isEGL14Supported() but its
+        // getEglConfig() will fail with a RuntimeException with message
+        // "Unable to find any matching EGL config". Fall back to EglBase10
+        // in the described scenario.
+        EglBase eglBase = null;
+        int[] configAttributes = EglBase.CONFIG_PLAIN;
+        RuntimeException cause = null;
+        boolean probe = eglVersion == EGL_NOT_PROBED;
+
+        if (probe || eglVersion == 14) {
             try {
                 // WebRTC internally does this check in isEGL14Supported, but it's no longer exposed
                 // in the public API
                 if (VERSION.SDK_INT >= 18) {
                     eglBase = EglBase.createEgl14(configAttributes);
+                    eglVersion = 14;
                 }
             } catch (RuntimeException ex) {
                 // Fall back to EglBase10.
                 cause = ex;
             }
+        }
 
-            if (eglBase == null) {
-                try {
-                    eglBase = EglBase.createEgl10(configAttributes);
-                } catch (RuntimeException ex) {
-                    // Neither EglBase14, nor EglBase10 succeeded to initialize.
-                    cause = ex;
-                }
+        if (eglBase == null) {
+            try {
+                eglBase = EglBase.createEgl10(configAttributes);
+                eglVersion = 10;
+                cause = null;
+            } catch (RuntimeException ex) {
+                // Neither EglBase14, nor EglBase10 succeeded to initialize.
+                cause = ex;
             }
+        }
 
-            if (cause != null) {
-                Log.e(EglUtils.class.getName(), "Failed to create EglBase", cause);
-            } else {
-                rootEglBase = eglBase;
+        if (eglBase == null) {
+            Log.e(TAG, "Failed to create EglBase", cause);
+            if (probe) {
+                eglVersion = EGL_UNAVAILABLE;
             }
         }
 
-        return rootEglBase;
-    }
-
-    public static EglBase.Context getRootEglBaseContext() {
-        EglBase eglBase = getRootEglBase();
-
-        return eglBase == null ? null : eglBase.getEglBaseContext();
+        return eglBase;
     }
 }
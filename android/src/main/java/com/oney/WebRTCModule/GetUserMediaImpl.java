@@ -1,7 +1,18 @@
 package com.oney.WebRTCModule;
 
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.media.projection.MediaProjection;
+import android.media.projection.MediaProjectionManager;
+import android.os.Build;
+import android.util.DisplayMetrics;
 import android.util.Log;
 
+import com.facebook.react.bridge.ActivityEventListener;
+import com.facebook.react.bridge.BaseActivityEventListener;
+import com.facebook.react.bridge.LifecycleEventListener;
+
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Callback;
 import com.facebook.react.bridge.ReactApplicationContext;
@@ -10,9 +21,15 @@ import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.webrtc.*;
 
@@ -26,7 +43,30 @@ class GetUserMediaImpl {
      */
     private static final String TAG = WebRTCModule.TAG;
 
-    private final CameraEnumerator cameraEnumerator;
+    /**
+     * The request code with which the permission to capture the screen is
+     * requested.
+     */
+    private static final int SCREEN_CAPTURE_REQUEST_CODE = 0x5C2E;
+
+    /**
+     * The default caps of the resolution (of the longer and the shorter side)
+     * and of the frame rate of screen capture. Screen content changes slowly
+     * and is expected to be sharp rather than smooth.
+     */
+    private static final int DEFAULT_SCREEN_MAX_LONG_SIDE = 1920;
+    private static final int DEFAULT_SCREEN_MAX_SHORT_SIDE = 1080;
+    private static final int DEFAULT_SCREEN_MAX_FPS = 15;
+
+    /**
+     * The camera enumerator and the cached enumeration of its camera devices.
+     * Created the first time video is requested (or devices are enumerated)
+     * because probing the Camera2 support queries every camera device. Never
+     * created in audio-only mode.
+     */
+    private CameraEnumerator cameraEnumerator;
+    private CameraDeviceCache cameraDeviceCache;
+
     private final ReactApplicationContext reactContext;
 
     /**
@@ -36,28 +76,211 @@ class GetUserMediaImpl {
      */
     private final Map<String, TrackPrivate> tracks = new HashMap<>();
 
+    /**
+     * The {@link VideoCaptureController}s of the open cameras. Each one may
+     * feed multiple local video tracks.
+     */
+    private final List<VideoCaptureController> videoCaptureControllers
+        = new ArrayList<>();
+
+    /**
+     * The cameras being opened on the camera executor by name. A
+     * {@code getUserMedia} call for a camera which is being opened waits for
+     * the pending open instead of opening the camera a second time (which
+     * would take it away from the first open).
+     */
+    private final Map<String, Future<VideoCaptureController>>
+        pendingVideoCaptureControllers = new HashMap<>();
+
+    /**
+     * The capture threads / {@code SurfaceTextureHelper}s of the cameras,
+     * recycled across turning cameras off and on.
+     */
+    private final SurfaceTextureHelperPool surfaceTextureHelperPool
+        = new SurfaceTextureHelperPool("CaptureThread");
+
+    /**
+     * Reports the stalls of the cameras and their recoveries to JavaScript
+     * for each track fed by the stalled camera.
+     */
+    private final VideoCaptureController.CaptureStateListener captureStateListener
+        = new VideoCaptureController.CaptureStateListener() {
+            @Override
+            public void onCaptureStalled(
+                    VideoCaptureController controller,
+                    String reason,
+                    int attempt) {
+                for (String trackId : controller.getTrackIds()) {
+                    WritableMap params = Arguments.createMap();
+                    params.putString("trackId", trackId);
+                    params.putString("state", "stalled");
+                    params.putString("reason", reason);
+                    params.putInt("attempt", attempt);
+                    webRTCModule.sendEvent("mediaStreamTrackCaptureStateChanged", params);
+                }
+            }
+
+            @Override
+            public void onCaptureRecovered(
+                    VideoCaptureController controller,
+                    long stallDuration) {
+                for (String trackId : controller.getTrackIds()) {
+                    WritableMap params = Arguments.createMap();
+                    params.putString("trackId", trackId);
+                    params.putString("state", "recovered");
+                    params.putDouble("stallDuration", stallDuration);
+                    webRTCModule.sendEvent("mediaStreamTrackCaptureStateChanged", params);
+                }
+            }
+        };
+
+    /**
+     * Moves the local video tracks onto the new root EGL context after
+     * {@link EglUtils} has rebuilt it.
+     */
+    private final EglUtils.RootEglContextListener rootEglContextListener
+        = eglContext ->
+            ThreadUtils.runOnExecutor(() -> onRootEglContextChanged(eglContext));
+
+    /**
+     * Adapts the local video tracks which opted in to the load of the device.
+     */
+    private final DeviceLoadAdapter deviceLoadAdapter;
+
+    /**
+     * The {@code getDisplayMedia} request waiting for the user to grant the
+     * permission to capture the screen, if any.
+     */
+    private ReadableMap displayMediaConstraints;
+    private Callback displayMediaSuccessCallback;
+    private Callback displayMediaErrorCallback;
+
+    /**
+     * Delivers the result of the screen capture permission request.
+     */
+    private final ActivityEventListener activityEventListener
+        = new BaseActivityEventListener() {
+            @Override
+            public void onActivityResult(
+                    Activity activity,
+                    int requestCode,
+                    int resultCode,
+                    Intent data) {
+                if (requestCode == SCREEN_CAPTURE_REQUEST_CODE) {
+                    ThreadUtils.runOnExecutor(() ->
+                        onScreenCapturePermissionResult(resultCode, data));
+                }
+            }
+        };
+
+    /**
+     * Aborts a pending {@code getDisplayMedia} request when the host activity
+     * is destroyed because the result of the permission request will not be
+     * delivered then.
+     */
+    private final LifecycleEventListener lifecycleEventListener
+        = new LifecycleEventListener() {
+            @Override
+            public void onHostResume() {
+            }
+
+            @Override
+            public void onHostPause() {
+            }
+
+            @Override
+            public void onHostDestroy() {
+                ThreadUtils.runOnExecutor(() -> abortDisplayMedia());
+            }
+        };
+
     private final WebRTCModule webRTCModule;
 
     GetUserMediaImpl(WebRTCModule webRTCModule, ReactApplicationContext reactContext) {
         this.webRTCModule = webRTCModule;
         this.reactContext = reactContext;
 
-        boolean camera2supported = false;
+        deviceLoadAdapter = new DeviceLoadAdapter(webRTCModule, reactContext);
 
-        try {
-            camera2supported = Camera2Enumerator.isSupported(reactContext);
-        } catch (Throwable tr) {
-            // Some devices will crash here with: Fatal Exception: java.lang.AssertionError: Supported FPS ranges cannot be null.
-            // Make sure we don't.
-            Log.w(TAG, "Error checking for Camera2 API support.", tr);
+        EglUtils.addRootEglContextListener(rootEglContextListener);
+
+        reactContext.addActivityEventListener(activityEventListener);
+        reactContext.addLifecycleEventListener(lifecycleEventListener);
+    }
+
+    /**
+     * Gets the camera enumerator, creating it on first use. Invoked on the
+     * camera executor as well as on the executor.
+     */
+    private synchronized CameraEnumerator getCameraEnumerator() {
+        if (cameraEnumerator == null) {
+            boolean camera2supported = false;
+
+            try {
+                camera2supported = Camera2Enumerator.isSupported(reactContext);
+            } catch (Throwable tr) {
+                // Some devices will crash here with: Fatal Exception: java.lang.AssertionError: Supported FPS ranges cannot be null.
+                // Make sure we don't.
+                Log.w(TAG, "Error checking for Camera2 API support.", tr);
+            }
+
+            if (camera2supported) {
+                Log.d(TAG, "Creating video capturer using Camera2 API.");
+                cameraEnumerator = new Camera2Enumerator(reactContext);
+            } else {
+                Log.d(TAG, "Creating video capturer using Camera1 API.");
+                cameraEnumerator = new Camera1Enumerator(false);
+            }
         }
 
-        if (camera2supported) {
-            Log.d(TAG, "Creating video capturer using Camera2 API.");
-            cameraEnumerator = new Camera2Enumerator(reactContext);
-        } else {
-            Log.d(TAG, "Creating video capturer using Camera1 API.");
-            cameraEnumerator = new Camera1Enumerator(false);
+        return cameraEnumerator;
+    }
+
+    /**
+     * Gets the cache of the camera devices, creating it on first use. Invoked
+     * on the executor.
+     */
+    private CameraDeviceCache getCameraDeviceCache() {
+        if (cameraDeviceCache == null) {
+            cameraDeviceCache
+                = new CameraDeviceCache(
+                    reactContext,
+                    getCameraEnumerator(),
+                    () -> webRTCModule.sendEvent("mediaDevicesOnDeviceChange", null));
+        }
+
+        return cameraDeviceCache;
+    }
+
+    /**
+     * Releases the resources which would otherwise outlive the module (e.g.
+     * across reloads). Invoked on the executor when the module is torn down.
+     */
+    void dispose() {
+        EglUtils.removeRootEglContextListener(rootEglContextListener);
+        reactContext.removeActivityEventListener(activityEventListener);
+        reactContext.removeLifecycleEventListener(lifecycleEventListener);
+        // The callbacks of a pending getDisplayMedia request cannot be
+        // invoked anymore.
+        displayMediaConstraints = null;
+        displayMediaSuccessCallback = null;
+        displayMediaErrorCallback = null;
+        surfaceTextureHelperPool.flush();
+        if (cameraDeviceCache != null) {
+            cameraDeviceCache.dispose();
+            cameraDeviceCache = null;
+        }
+    }
+
+    /**
+     * Moves the capturers of all local video tracks onto a new root EGL
+     * context. The tracks and their sources remain intact.
+     */
+    private void onRootEglContextChanged(EglBase.Context eglContext) {
+        surfaceTextureHelperPool.flush();
+        for (VideoCaptureController controller : videoCaptureControllers) {
+            Log.d(TAG, "Reinitializing capturer of camera " + controller.getDeviceName());
+            controller.reinitialize();
         }
     }
 
@@ -77,59 +300,202 @@ class GetUserMediaImpl {
         return track;
     }
 
-    private VideoTrack createVideoTrack(ReadableMap constraints) {
+    private VideoTrack createVideoTrack(
+            ReadableMap constraints,
+            VideoCaptureController videoCaptureController) {
         ReadableMap videoConstraintsMap = constraints.getMap("video");
 
         Log.d(TAG, "getUserMedia(video): " + videoConstraintsMap);
 
-        VideoCaptureController videoCaptureController
-            = new VideoCaptureController(cameraEnumerator, videoConstraintsMap);
-        VideoCapturer videoCapturer = videoCaptureController.getVideoCapturer();
-        if (videoCapturer == null) {
+        if (videoCaptureController == null) {
             return null;
         }
 
         PeerConnectionFactory pcFactory = webRTCModule.mFactory;
-        EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
-        SurfaceTextureHelper surfaceTextureHelper =
-            SurfaceTextureHelper.create("CaptureThread", eglContext);
+        VideoCapturer videoCapturer = videoCaptureController.getVideoCapturer();
         VideoSource videoSource = pcFactory.createVideoSource(videoCapturer.isScreencast());
-        videoCapturer.initialize(surfaceTextureHelper, reactContext, videoSource.getCapturerObserver());
+
+        VideoFrameProcessorChain frameProcessorChain
+            = createFrameProcessorChain(videoConstraintsMap, videoCaptureController);
+
+        if (frameProcessorChain != null) {
+            videoSource.setVideoProcessor(frameProcessorChain);
+        }
 
         String id = UUID.randomUUID().toString();
         VideoTrack track = pcFactory.createVideoTrack(id, videoSource);
 
         track.setEnabled(true);
-        videoCaptureController.startCapture();
+        videoCaptureController.addTrack(
+            id,
+            videoSource,
+            videoCaptureController.selectFormat(videoConstraintsMap));
 
-        tracks.put(id, new TrackPrivate(track, videoSource, videoCaptureController));
+        tracks.put(
+            id,
+            new TrackPrivate(
+                track, videoSource, videoCaptureController, frameProcessorChain));
+
+        if (videoConstraintsMap.hasKey("adaptToDeviceLoad")
+                && videoConstraintsMap.getBoolean("adaptToDeviceLoad")) {
+            deviceLoadAdapter.addTrack(track, videoCaptureController);
+        }
 
         return track;
     }
 
-    ReadableArray enumerateDevices() {
-        WritableArray array = Arguments.createArray();
-        String[] devices = cameraEnumerator.getDeviceNames();
+    /**
+     * Creates the chain of the {@link VideoFrameProcessor}s named in the
+     * {@code frameProcessors} video constraint.
+     *
+     * @return the {@code VideoFrameProcessorChain} or {@code null} if no
+     * (registered) processor is named
+     */
+    private VideoFrameProcessorChain createFrameProcessorChain(
+            ReadableMap constraints,
+            VideoCaptureController videoCaptureController) {
+        if (!constraints.hasKey("frameProcessors")
+                || constraints.isNull("frameProcessors")) {
+            return null;
+        }
 
-        for(int i = 0; i < devices.length; ++i) {
-            String deviceName = devices[i];
-            boolean isFrontFacing;
-            try {
-                // This can throw an exception when using the Camera 1 API.
-                isFrontFacing = cameraEnumerator.isFrontFacing(deviceName);
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to check the facing mode of camera");
+        ReadableArray names = constraints.getArray("frameProcessors");
+        VideoFrameProcessorChain chain
+            = new VideoFrameProcessorChain(
+                videoCaptureController::getSurfaceTextureHelper);
+
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.getString(i);
+            VideoFrameProcessor.Factory factory
+                = webRTCModule.getVideoFrameProcessorFactory(name);
+
+            if (factory == null) {
+                Log.w(TAG, "No video frame processor registered as " + name);
                 continue;
             }
-            WritableMap params = Arguments.createMap();
-            params.putString("facing", isFrontFacing ? "front" : "environment");
-            params.putString("deviceId", "" + i);
-            params.putString("groupId", "");
-            params.putString("label", deviceName);
-            params.putString("kind", "videoinput");
-            array.pushMap(params);
+            chain.addStage(name, factory.create());
+        }
+
+        return chain.isEmpty() ? null : chain;
+    }
+
+    /**
+     * Gets the timing of the {@link VideoFrameProcessor}s of a specific local
+     * video track.
+     */
+    ReadableArray getProcessorStats(String trackId) {
+        TrackPrivate track = tracks.get(trackId);
+
+        if (track == null || track.frameProcessorChain == null) {
+            return Arguments.createArray();
+        }
+        return track.frameProcessorChain.getStats();
+    }
+
+    /**
+     * Gets the {@link VideoCaptureController} of the open camera which
+     * satisfies specific constraints, if any, so that it may be shared.
+     */
+    private VideoCaptureController findVideoCaptureController(
+            ReadableMap constraints) {
+        String deviceId = ReactBridgeUtil.getMapStrValue(constraints, "deviceId");
+        String facingMode = ReactBridgeUtil.getMapStrValue(constraints, "facingMode");
+
+        for (VideoCaptureController controller : videoCaptureControllers) {
+            if (controller.matches(deviceId, facingMode)) {
+                Log.d(TAG, "Sharing camera " + controller.getDeviceName());
+                return controller;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates a {@link VideoCaptureController} for the camera which satisfies
+     * specific constraints, queries the capture formats of that camera and
+     * starts opening it in the format the constraints select. Runs on the
+     * camera executor and, consequently, does not touch the state of
+     * {@code GetUserMediaImpl} other than the (synchronized)
+     * {@link #surfaceTextureHelperPool}.
+     *
+     * @return the {@code VideoCaptureController} or {@code null} if no camera
+     * could be opened
+     */
+    private VideoCaptureController createVideoCaptureController(
+            ReadableMap constraints) {
+        VideoCaptureController videoCaptureController
+            = new VideoCaptureController(getCameraEnumerator(), constraints);
+        if (videoCaptureController.getVideoCapturer() == null) {
+            return null;
+        }
+
+        // Selecting the format also warms up the cache of the capture formats
+        // so that selecting the format of the track on the executor is cheap.
+        CaptureFormatSelector.Format format
+            = videoCaptureController.selectFormat(constraints);
+
+        videoCaptureController.initialize(surfaceTextureHelperPool, reactContext);
+        videoCaptureController.startCapture(format);
+
+        return videoCaptureController;
+    }
+
+    /**
+     * Starts managing a {@link VideoCaptureController} created by
+     * {@link #createVideoCaptureController}. If a controller for the same
+     * camera has been added in the meantime, it is shared instead.
+     *
+     * @return the {@code VideoCaptureController} to create the video track
+     * from or {@code null} if no camera could be opened
+     */
+    private VideoCaptureController addVideoCaptureController(
+            ReadableMap constraints,
+            VideoCaptureController videoCaptureController) {
+        if (videoCaptureController != null
+                && videoCaptureController.getVideoCapturer() == null) {
+            // Shared with an earlier getUserMedia call through a pending open
+            // and disposed of since (i.e. all its tracks have been released).
+            return null;
+        }
+        if (videoCaptureControllers.contains(videoCaptureController)) {
+            // Shared with an earlier getUserMedia call through a pending open.
+            return videoCaptureController;
+        }
+
+        VideoCaptureController shared = findVideoCaptureController(constraints);
+
+        if (shared != null || videoCaptureController == null) {
+            if (videoCaptureController != null) {
+                videoCaptureController.dispose();
+            }
+            return shared;
+        }
+
+        // The controller may have fallen back to a camera which is open
+        // already.
+        for (VideoCaptureController controller : videoCaptureControllers) {
+            String deviceName = controller.getDeviceName();
+
+            if (deviceName != null
+                    && deviceName.equals(videoCaptureController.getDeviceName())) {
+                videoCaptureController.dispose();
+                return controller;
+            }
         }
 
+        videoCaptureController.setCaptureStateListener(captureStateListener);
+        videoCaptureControllers.add(videoCaptureController);
+
+        return videoCaptureController;
+    }
+
+    ReadableArray enumerateDevices() {
+        WritableArray array
+            = webRTCModule.isAudioOnly()
+                ? Arguments.createArray()
+                : getCameraDeviceCache().getDevices();
+
         WritableMap audio = Arguments.createMap();
         audio.putString("deviceId", "audio-1");
         audio.putString("groupId", "");
@@ -163,15 +529,122 @@ class GetUserMediaImpl {
         //   should change `parseConstraints()` according
         //   see: https://www.w3.org/TR/mediacapture-streams/#idl-def-MediaTrackConstraints
 
-        AudioTrack audioTrack = null;
-        VideoTrack videoTrack = null;
+        if (constraints.hasKey("video") && webRTCModule.isAudioOnly()) {
+            errorCallback.invoke("DOMException", "NotSupportedError");
+            return;
+        }
+
+        if (!constraints.hasKey("video")
+                || isSyntheticSource(constraints.getMap("video"))) {
+            // No camera has to be opened.
+            finishGetUserMedia(
+                constraints,
+                constraints.hasKey("audio") ? createAudioTrack(constraints) : null,
+                /* videoCaptureController */ null,
+                successCallback,
+                errorCallback);
+            return;
+        }
+
+        ReadableMap videoConstraintsMap = constraints.getMap("video");
+        VideoCaptureController videoCaptureController
+            = findVideoCaptureController(videoConstraintsMap);
+
+        if (videoCaptureController != null) {
+            // The camera is open already.
+            finishGetUserMedia(
+                constraints,
+                constraints.hasKey("audio") ? createAudioTrack(constraints) : null,
+                videoCaptureController,
+                successCallback,
+                errorCallback);
+            return;
+        }
+
+        // Open the camera on the camera executor while the audio track is
+        // being created on this one unless the camera is being opened
+        // already. The second task on the camera executor runs after the
+        // first one has completed so waiting for its result does not block.
+        String deviceName
+            = getCameraDeviceCache().getDeviceName(
+                ReactBridgeUtil.getMapStrValue(videoConstraintsMap, "deviceId"),
+                ReactBridgeUtil.getMapStrValue(videoConstraintsMap, "facingMode"));
+        Future<VideoCaptureController> future
+            = openVideoCaptureController(deviceName, videoConstraintsMap);
+        AudioTrack audioTrack
+            = constraints.hasKey("audio") ? createAudioTrack(constraints) : null;
+
+        ThreadUtils.runOnCameraExecutor(() -> ThreadUtils.runOnExecutor(() -> {
+            VideoCaptureController createdVideoCaptureController = null;
+
+            if (pendingVideoCaptureControllers.get(deviceName) == future) {
+                pendingVideoCaptureControllers.remove(deviceName);
+            }
+            try {
+                createdVideoCaptureController = future.get();
+            } catch (ExecutionException | InterruptedException e) {
+                Log.e(TAG, "Failed to open the camera", e);
+            }
 
-        if (constraints.hasKey("audio")) {
-            audioTrack = createAudioTrack(constraints);
+            finishGetUserMedia(
+                constraints,
+                audioTrack,
+                addVideoCaptureController(
+                    videoConstraintsMap, createdVideoCaptureController),
+                successCallback,
+                errorCallback);
+        }));
+    }
+
+    /**
+     * Opens a specific camera on the camera executor unless it is being
+     * opened already.
+     *
+     * @param deviceName the name of the camera which the constraints select
+     * or {@code null} if unknown
+     * @return the {@code Future} of the {@code VideoCaptureController} of the
+     * camera
+     */
+    private Future<VideoCaptureController> openVideoCaptureController(
+            String deviceName,
+            ReadableMap constraints) {
+        Future<VideoCaptureController> future
+            = pendingVideoCaptureControllers.get(deviceName);
+
+        if (future != null) {
+            Log.d(TAG, "Waiting for camera " + deviceName + " to be opened");
+            return future;
         }
 
+        future
+            = ThreadUtils.submitToCameraExecutor(() ->
+                createVideoCaptureController(constraints));
+        if (deviceName != null) {
+            pendingVideoCaptureControllers.put(deviceName, future);
+        }
+
+        return future;
+    }
+
+    /**
+     * Completes {@code getUserMedia} once the audio track (if requested) has
+     * been created and the camera (if requested) has been opened.
+     */
+    private void finishGetUserMedia(
+            ReadableMap constraints,
+            AudioTrack audioTrack,
+            VideoCaptureController videoCaptureController,
+            Callback successCallback,
+            Callback errorCallback) {
+        VideoTrack videoTrack = null;
+
         if (constraints.hasKey("video")) {
-            videoTrack = createVideoTrack(constraints);
+            ReadableMap videoConstraintsMap = constraints.getMap("video");
+
+            videoTrack
+                = isSyntheticSource(videoConstraintsMap)
+                    ? createSyntheticTrack(videoConstraintsMap)
+                    : createVideoTrack(constraints, videoCaptureController);
         }
 
         if (audioTrack == null && videoTrack == null) {
@@ -181,12 +654,294 @@ class GetUserMediaImpl {
              return;
         }
 
+        createStream(new MediaStreamTrack[]{audioTrack, videoTrack}, successCallback);
+    }
+
+    /**
+     * Implements {@code getDisplayMedia}: asks the user for the permission to
+     * capture the screen and creates a screen capture track once (and if) it
+     * is granted.
+     */
+    void getDisplayMedia(
+            ReadableMap constraints,
+            Callback successCallback,
+            Callback errorCallback) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP
+                || webRTCModule.isAudioOnly()) {
+            errorCallback.invoke("DOMException", "NotSupportedError");
+            return;
+        }
+
+        Activity activity = reactContext.getCurrentActivity();
+
+        if (activity == null) {
+            errorCallback.invoke("DOMException", "InvalidStateError");
+            return;
+        }
+        if (displayMediaErrorCallback != null) {
+            errorCallback.invoke("DOMException", "InvalidStateError");
+            return;
+        }
+
+        displayMediaConstraints = constraints;
+        displayMediaSuccessCallback = successCallback;
+        displayMediaErrorCallback = errorCallback;
+
+        MediaProjectionManager mediaProjectionManager
+            = (MediaProjectionManager) activity.getSystemService(
+                Context.MEDIA_PROJECTION_SERVICE);
+
+        try {
+            activity.startActivityForResult(
+                mediaProjectionManager.createScreenCaptureIntent(),
+                SCREEN_CAPTURE_REQUEST_CODE);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to request the permission to capture the screen", e);
+            abortDisplayMedia();
+        }
+    }
+
+    /**
+     * Fails the pending {@code getDisplayMedia} request, if any, with an
+     * {@code AbortError} so that it does not block later requests.
+     */
+    private void abortDisplayMedia() {
+        Callback errorCallback = displayMediaErrorCallback;
+
+        displayMediaConstraints = null;
+        displayMediaSuccessCallback = null;
+        displayMediaErrorCallback = null;
+
+        if (errorCallback != null) {
+            errorCallback.invoke("DOMException", "AbortError");
+        }
+    }
+
+    private void onScreenCapturePermissionResult(int resultCode, Intent data) {
+        ReadableMap constraints = displayMediaConstraints;
+        Callback successCallback = displayMediaSuccessCallback;
+        Callback errorCallback = displayMediaErrorCallback;
+
+        displayMediaConstraints = null;
+        displayMediaSuccessCallback = null;
+        displayMediaErrorCallback = null;
+
+        if (errorCallback == null) {
+            return;
+        }
+        if (resultCode != Activity.RESULT_OK) {
+            errorCallback.invoke("DOMException", "NotAllowedError");
+            return;
+        }
+
+        VideoTrack videoTrack = createScreenTrack(constraints, data);
+
+        if (videoTrack == null) {
+            errorCallback.invoke("DOMException", "AbortError");
+            return;
+        }
+
+        createStream(new MediaStreamTrack[]{videoTrack}, successCallback);
+    }
+
+    /**
+     * Creates a local video track which captures the screen. The source is a
+     * screencast (so that the encoder favors detail over motion) and the
+     * resolution and frame rate are capped by the {@code video} constraints
+     * (if any). The virtual display only produces a frame when its content
+     * has changed so an unchanging screen is not captured (and encoded) over
+     * and over again.
+     */
+    private VideoTrack createScreenTrack(ReadableMap constraints, Intent data) {
+        ReadableMap videoConstraintsMap
+            = constraints.hasKey("video") && !constraints.isNull("video")
+                ? constraints.getMap("video")
+                : null;
+
+        Log.d(TAG, "getDisplayMedia(video): " + videoConstraintsMap);
+
+        AtomicReference<String> trackId = new AtomicReference<>();
+        VideoCapturer videoCapturer
+            = new ScreenCapturerAndroid(data, new MediaProjection.Callback() {
+                @Override
+                public void onStop() {
+                    Log.d(TAG, "Screen capture stopped");
+                    ThreadUtils.runOnExecutor(() ->
+                        onScreenCaptureStopped(trackId.get()));
+                }
+            });
+        VideoTrack track
+            = createCapturerTrack(
+                videoCapturer,
+                "ScreenCaptureThread",
+                getScreenCaptureFormat(videoConstraintsMap));
+
+        if (track != null) {
+            trackId.set(track.id());
+        }
+
+        return track;
+    }
+
+    /**
+     * Ends a screen capture track after the capture was stopped other than by
+     * the application e.g. revoked by the user from the system UI. The
+     * capturer is disposed of; the track itself is disposed of when it is
+     * released.
+     */
+    private void onScreenCaptureStopped(String trackId) {
+        TrackPrivate private_ = trackId == null ? null : tracks.get(trackId);
+
+        if (private_ == null || private_.videoCaptureController == null) {
+            return;
+        }
+
+        private_.videoCaptureController.dispose();
+
+        WritableMap params = Arguments.createMap();
+        params.putString("trackId", trackId);
+        params.putString("state", "ended");
+        params.putString("reason", "revoked");
+        webRTCModule.sendEvent("mediaStreamTrackCaptureStateChanged", params);
+    }
+
+    /**
+     * Creates a local video track fed by a specific {@link VideoCapturer}
+     * other than a camera. Such a capturer is not shared with other tracks.
+     *
+     * @param videoCapturer the {@code VideoCapturer} to feed the track
+     * @param threadName the name of the thread to capture on
+     * @param format the format to capture at
+     */
+    private VideoTrack createCapturerTrack(
+            VideoCapturer videoCapturer,
+            String threadName,
+            CaptureFormatSelector.Format format) {
+        VideoCaptureController videoCaptureController
+            = new VideoCaptureController(videoCapturer);
+
+        PeerConnectionFactory pcFactory = webRTCModule.mFactory;
+        EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
+        SurfaceTextureHelper surfaceTextureHelper =
+            SurfaceTextureHelper.create(threadName, eglContext);
+        videoCaptureController.initialize(surfaceTextureHelper, reactContext);
+
+        VideoSource videoSource = pcFactory.createVideoSource(videoCapturer.isScreencast());
+        String id = UUID.randomUUID().toString();
+        VideoTrack track = pcFactory.createVideoTrack(id, videoSource);
+
+        track.setEnabled(true);
+        videoCaptureController.addTrack(id, videoSource, format);
+
+        tracks.put(id, new TrackPrivate(track, videoSource, videoCaptureController));
+
+        return track;
+    }
+
+    /**
+     * Determines whether specific video constraints select a synthetic
+     * source (i.e. a Y4M file or a generated pattern) instead of a camera.
+     */
+    private static boolean isSyntheticSource(ReadableMap videoConstraints) {
+        String source = ReactBridgeUtil.getMapStrValue(videoConstraints, "source");
+
+        return "file".equals(source) || "pattern".equals(source);
+    }
+
+    /**
+     * Creates a local video track fed by a synthetic source instead of a
+     * camera so that e.g. encoder benchmarks may run reproducibly without
+     * camera hardware: frames are read from the Y4M file at {@code filePath}
+     * if {@code source} is {@code file} or generated at the requested
+     * resolution and frame rate if {@code source} is {@code pattern}.
+     *
+     * @return the {@code VideoTrack} or {@code null} if the file could not be
+     * opened
+     */
+    private VideoTrack createSyntheticTrack(ReadableMap videoConstraintsMap) {
+        Log.d(TAG, "getUserMedia(video): " + videoConstraintsMap);
+
+        VideoCapturer videoCapturer;
+
+        if ("file".equals(ReactBridgeUtil.getMapStrValue(videoConstraintsMap, "source"))) {
+            String filePath
+                = ReactBridgeUtil.getMapStrValue(videoConstraintsMap, "filePath");
+
+            try {
+                videoCapturer = new FileVideoCapturer(filePath);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to open video file " + filePath, e);
+                return null;
+            }
+        } else {
+            videoCapturer = new PatternVideoCapturer();
+        }
+
+        return createCapturerTrack(
+            videoCapturer,
+            "SyntheticCaptureThread",
+            new CaptureFormatSelector.Format(
+                videoConstraintsMap.getInt("width"),
+                videoConstraintsMap.getInt("height"),
+                videoConstraintsMap.getInt("frameRate")));
+    }
+
+    /**
+     * Gets the format to capture the screen at i.e. the size of the display
+     * scaled down (preserving the aspect ratio) to fit within the caps.
+     */
+    private CaptureFormatSelector.Format getScreenCaptureFormat(
+            ReadableMap constraints) {
+        DisplayMetrics displayMetrics
+            = reactContext.getResources().getDisplayMetrics();
+        int width = displayMetrics.widthPixels;
+        int height = displayMetrics.heightPixels;
+        int maxWidth = getInt(constraints, "width", 0);
+        int maxHeight = getInt(constraints, "height", 0);
+        int maxLongSide
+            = maxWidth > 0 || maxHeight > 0
+                ? Math.max(maxWidth, maxHeight)
+                : DEFAULT_SCREEN_MAX_LONG_SIDE;
+        int maxShortSide
+            = maxWidth > 0 && maxHeight > 0
+                ? Math.min(maxWidth, maxHeight)
+                : maxLongSide == DEFAULT_SCREEN_MAX_LONG_SIDE
+                    ? DEFAULT_SCREEN_MAX_SHORT_SIDE
+                    : maxLongSide;
+        double scale
+            = Math.min(
+                1,
+                Math.min(
+                    maxLongSide / (double) Math.max(width, height),
+                    maxShortSide / (double) Math.min(width, height)));
+        int fps = getInt(constraints, "frameRate", DEFAULT_SCREEN_MAX_FPS);
+
+        // Encoders prefer even dimensions.
+        return new CaptureFormatSelector.Format(
+            (int) (width * scale) & ~1,
+            (int) (height * scale) & ~1,
+            fps);
+    }
+
+    private static int getInt(ReadableMap map, String key, int fallback) {
+        return map != null && map.hasKey(key) && !map.isNull(key)
+            ? map.getInt(key)
+            : fallback;
+    }
+
+    /**
+     * Creates a local {@link MediaStream} with specific (local) tracks and
+     * reports it to JavaScript in the format of {@code getUserMedia}.
+     */
+    private void createStream(
+            MediaStreamTrack[] mediaStreamTracks,
+            Callback successCallback) {
         String streamId = UUID.randomUUID().toString();
         MediaStream mediaStream
             = webRTCModule.mFactory.createLocalMediaStream(streamId);
         WritableArray tracks = Arguments.createArray();
 
-        for (MediaStreamTrack track : new MediaStreamTrack[]{audioTrack, videoTrack}) {
+        for (MediaStreamTrack track : mediaStreamTracks) {
             if (track == null) {
                 continue;
             }
@@ -206,6 +961,17 @@ class GetUserMediaImpl {
             track_.putString("label", trackId);
             track_.putString("readyState", track.state().toString());
             track_.putBoolean("remote", false);
+
+            TrackPrivate private_ = this.tracks.get(trackId);
+
+            if (private_ != null && private_.videoCaptureController != null) {
+                track_.putMap(
+                    "settings",
+                    private_.videoCaptureController.getSettings(trackId));
+                track_.putBoolean(
+                    "adaptToDeviceLoad",
+                    deviceLoadAdapter.hasTrack(trackId));
+            }
             tracks.pushMap(track_);
         }
 
@@ -218,19 +984,66 @@ class GetUserMediaImpl {
     void mediaStreamTrackSetEnabled(String trackId, final boolean enabled) {
         TrackPrivate track = tracks.get(trackId);
         if (track != null && track.videoCaptureController != null) {
-            if (enabled) {
-                track.videoCaptureController.startCapture();
-            } else {
-                track.videoCaptureController.stopCapture();
-            }
+            track.videoCaptureController.setTrackEnabled(trackId, enabled);
+        }
+    }
+
+    /**
+     * Applies new video constraints to a specific local video track without
+     * recreating it.
+     *
+     * @return the new settings of the track or {@code null} if the track is
+     * not a local video track
+     */
+    WritableMap applyConstraints(String trackId, ReadableMap constraints) {
+        TrackPrivate track = tracks.get(trackId);
+
+        if (track == null || track.videoCaptureController == null) {
+            return null;
         }
+
+        Log.d(TAG, "applyConstraints(video): " + constraints);
+
+        return track.videoCaptureController.applyConstraints(trackId, constraints);
     }
 
     void disposeTrack(String id) {
         TrackPrivate track = tracks.remove(id);
         if (track != null) {
-            track.dispose();
+            deviceLoadAdapter.removeTrack(id);
+            if (track.dispose()) {
+                videoCaptureControllers.remove(track.videoCaptureController);
+            }
+        }
+    }
+
+    /**
+     * Gets the IDs of the enabled local audio tracks.
+     */
+    List<String> getLocalAudioTrackIds() {
+        List<String> trackIds = new ArrayList<>();
+
+        for (TrackPrivate track : tracks.values()) {
+            if (track.track instanceof AudioTrack && track.track.enabled()) {
+                trackIds.add(track.track.id());
+            }
+        }
+
+        return trackIds;
+    }
+
+    /**
+     * Gets the timing of the camera pipeline of a specific local video track.
+     */
+    ReadableMap getCameraMetrics(String trackId) {
+        TrackPrivate track = tracks.get(trackId);
+        WritableMap metrics = null;
+
+        if (track != null && track.videoCaptureController != null) {
+            metrics = track.videoCaptureController.getCameraMetrics();
         }
+
+        return metrics == null ? Arguments.createMap() : metrics;
     }
 
     void switchCamera(String trackId) {
@@ -258,6 +1071,12 @@ class GetUserMediaImpl {
          */
         public final VideoCaptureController videoCaptureController;
 
+        /**
+         * The {@code VideoFrameProcessor}s which process the frames of
+         * {@link #videoCaptureController} for {@link #track}, if any.
+         */
+        public final VideoFrameProcessorChain frameProcessorChain;
+
         /**
          * Whether this object has been disposed or not.
          */
@@ -277,23 +1096,47 @@ class GetUserMediaImpl {
                 MediaStreamTrack track,
                 MediaSource mediaSource,
                 VideoCaptureController videoCaptureController) {
+            this(track, mediaSource, videoCaptureController, null);
+        }
+
+        public TrackPrivate(
+                MediaStreamTrack track,
+                MediaSource mediaSource,
+                VideoCaptureController videoCaptureController,
+                VideoFrameProcessorChain frameProcessorChain) {
             this.track = track;
             this.mediaSource = mediaSource;
             this.videoCaptureController = videoCaptureController;
+            this.frameProcessorChain = frameProcessorChain;
             this.disposed = false;
         }
 
-        public void dispose() {
+        /**
+         * Disposes of this track and of its source. The camera is disposed of
+         * only if no other track shares it.
+         *
+         * @return {@code true} if {@link #videoCaptureController} has been
+         * disposed of; otherwise, {@code false}
+         */
+        public boolean dispose() {
+            boolean controllerDisposed = false;
+
             if (!disposed) {
+                if (frameProcessorChain != null) {
+                    frameProcessorChain.release();
+                }
                 if (videoCaptureController != null) {
-                    if (videoCaptureController.stopCapture()) {
+                    if (videoCaptureController.removeTrack(track.id())) {
                         videoCaptureController.dispose();
+                        controllerDisposed = true;
                     }
                 }
                 mediaSource.dispose();
                 track.dispose();
                 disposed = true;
             }
+
+            return controllerDisposed;
         }
     }
 }
@@ -0,0 +1,67 @@
+package com.oney.WebRTCModule;
+
+import org.webrtc.EglBase;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoDecoder;
+import org.webrtc.VideoDecoderFactory;
+
+/**
+ * A {@link VideoDecoderFactory} which defers the creation of the root EGL
+ * context and of the hardware decoder factory (implementing a
+ * {@link CodecPolicy}) until the first video decoder is actually needed. See
+ * {@link LazyVideoEncoderFactory}.
+ */
+class LazyVideoDecoderFactory implements VideoDecoderFactory {
+    private final VideoCodecCache codecCache;
+    private final CodecPolicy codecPolicy;
+
+    /**
+     * The factory which creates the decoders and the root EGL context it was
+     * created with.
+     */
+    private VideoDecoderFactory factory;
+    private EglBase.Context factoryEglContext;
+
+    private VideoCodecInfo[] supportedCodecs;
+
+    LazyVideoDecoderFactory(VideoCodecCache codecCache, CodecPolicy codecPolicy) {
+        this.codecCache = codecCache;
+        this.codecPolicy = codecPolicy;
+    }
+
+    @Override
+    public synchronized VideoDecoder createDecoder(VideoCodecInfo info) {
+        return getFactory().createDecoder(info);
+    }
+
+    @Override
+    public synchronized VideoCodecInfo[] getSupportedCodecs() {
+        if (supportedCodecs == null) {
+            supportedCodecs
+                = codecCache.getSupportedCodecs(
+                    "decoder/" + codecPolicy.getKey(),
+                    () -> codecPolicy.createVideoDecoderFactory(/* eglContext */ null)
+                        .getSupportedCodecs());
+        }
+
+        return supportedCodecs;
+    }
+
+    /**
+     * Gets the factory to create decoders with, (re)creating it if the root
+     * EGL context has not been created yet or has been rebuilt since.
+     */
+    private VideoDecoderFactory getFactory() {
+        EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
+
+        if (factory == null || eglContext != factoryEglContext) {
+            // Without an EGL context, the hardware codecs use byte buffers
+            // so the factory still supports the codecs listed by
+            // getSupportedCodecs().
+            factory = codecPolicy.createVideoDecoderFactory(eglContext);
+            factoryEglContext = eglContext;
+        }
+
+        return factory;
+    }
+}
@@ -0,0 +1,70 @@
+package com.oney.WebRTCModule;
+
+import org.webrtc.EglBase;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoEncoder;
+import org.webrtc.VideoEncoderFactory;
+
+/**
+ * A {@link VideoEncoderFactory} which defers the creation of the root EGL
+ * context and of the hardware encoder factory (implementing a
+ * {@link CodecPolicy}) until the first video encoder is actually needed. The
+ * supported codecs, which the {@code PeerConnectionFactory} queries upfront,
+ * are listed by a factory without an EGL context because listing them does
+ * not require one and are cached across launches by {@link VideoCodecCache}.
+ * Audio-only sessions thus never pay for the EGL context and its GPU memory.
+ */
+class LazyVideoEncoderFactory implements VideoEncoderFactory {
+    private final VideoCodecCache codecCache;
+    private final CodecPolicy codecPolicy;
+
+    /**
+     * The factory which creates the encoders and the root EGL context it was
+     * created with.
+     */
+    private VideoEncoderFactory factory;
+    private EglBase.Context factoryEglContext;
+
+    private VideoCodecInfo[] supportedCodecs;
+
+    LazyVideoEncoderFactory(VideoCodecCache codecCache, CodecPolicy codecPolicy) {
+        this.codecCache = codecCache;
+        this.codecPolicy = codecPolicy;
+    }
+
+    @Override
+    public synchronized VideoEncoder createEncoder(VideoCodecInfo info) {
+        return getFactory().createEncoder(info);
+    }
+
+    @Override
+    public synchronized VideoCodecInfo[] getSupportedCodecs() {
+        if (supportedCodecs == null) {
+            supportedCodecs
+                = codecCache.getSupportedCodecs(
+                    "encoder/" + codecPolicy.getKey(),
+                    () -> codecPolicy.createVideoEncoderFactory(/* eglContext */ null)
+                        .getSupportedCodecs());
+        }
+
+        return supportedCodecs;
+    }
+
+    /**
+     * Gets the factory to create encoders with, (re)creating it if the root
+     * EGL context has not been created yet or has been rebuilt since.
+     */
+    private VideoEncoderFactory getFactory() {
+        EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
+
+        if (factory == null || eglContext != factoryEglContext) {
+            // Without an EGL context, the hardware codecs use byte buffers
+            // so the factory still supports the codecs listed by
+            // getSupportedCodecs().
+            factory = codecPolicy.createVideoEncoderFactory(eglContext);
+            factoryEglContext = eglContext;
+        }
+
+        return factory;
+    }
+}
@@ -0,0 +1,161 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.JavaI420Buffer;
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.VideoCapturer;
+import org.webrtc.VideoFrame;
+
+/**
+ * A {@link VideoCapturer} which generates a moving test pattern at a
+ * specific resolution and frame rate without any camera hardware. Meant for
+ * reproducible encoder and throughput benchmarks (e.g. on emulators). The
+ * pattern is a set of diagonal gradients which shift every frame so that the
+ * encoder has to deal with motion. Frames are generated on the thread of the
+ * {@link SurfaceTextureHelper} the capturer is initialized with.
+ */
+class PatternVideoCapturer implements VideoCapturer {
+    /**
+     * The number of pixels the pattern moves by every frame.
+     */
+    private static final int SPEED = 4;
+
+    private CapturerObserver capturerObserver;
+    private Handler handler;
+
+    private int width;
+    private int height;
+    private int fps;
+
+    /**
+     * A gradient longer than a row by one period so that any row of the
+     * pattern may be copied from it at an offset in one go.
+     */
+    private byte[] gradient;
+
+    /**
+     * The index of the next frame and the times (in
+     * {@link SystemClock#elapsedRealtime()} nanoseconds and in
+     * {@link SystemClock#uptimeMillis()} milliseconds respectively) of the
+     * first frame for timestamping and scheduling the frames.
+     */
+    private int frameIndex;
+    private long startTimeNs;
+    private long startUptimeMs;
+    private boolean capturing;
+
+    private final Runnable tick = this::tick;
+
+    @Override
+    public void initialize(
+            SurfaceTextureHelper surfaceTextureHelper,
+            Context context,
+            CapturerObserver capturerObserver) {
+        this.capturerObserver = capturerObserver;
+        this.handler = surfaceTextureHelper.getHandler();
+    }
+
+    @Override
+    public void startCapture(int width, int height, int fps) {
+        handler.post(() -> {
+            setFormat(width, height, fps);
+            capturing = true;
+            capturerObserver.onCapturerStarted(true);
+            handler.post(tick);
+        });
+    }
+
+    @Override
+    public void stopCapture() throws InterruptedException {
+        org.webrtc.ThreadUtils.invokeAtFrontUninterruptibly(handler, () -> {
+            if (capturing) {
+                capturing = false;
+                handler.removeCallbacks(tick);
+                capturerObserver.onCapturerStopped();
+            }
+        });
+    }
+
+    @Override
+    public void changeCaptureFormat(int width, int height, int fps) {
+        handler.post(() -> setFormat(width, height, fps));
+    }
+
+    @Override
+    public void dispose() {
+        if (handler == null) {
+            // Never initialized, hence never started.
+            return;
+        }
+        try {
+            stopCapture();
+        } catch (InterruptedException e) {
+            // Not thrown.
+        }
+    }
+
+    @Override
+    public boolean isScreencast() {
+        return false;
+    }
+
+    private void setFormat(int width, int height, int fps) {
+        // I420 requires even dimensions.
+        this.width = Math.max(2, width & ~1);
+        this.height = Math.max(2, height & ~1);
+        this.fps = Math.max(1, fps);
+
+        gradient = new byte[Math.max(this.width, this.height) + 256];
+        for (int i = 0; i < gradient.length; i++) {
+            gradient[i] = (byte) i;
+        }
+
+        // Restart the timing because the frame rate may have changed.
+        frameIndex = 0;
+        startTimeNs = TimeUnit.MILLISECONDS.toNanos(SystemClock.elapsedRealtime());
+        startUptimeMs = SystemClock.uptimeMillis();
+    }
+
+    private void tick() {
+        if (!capturing) {
+            return;
+        }
+
+        long offsetNs = TimeUnit.SECONDS.toNanos(frameIndex) / fps;
+        VideoFrame.I420Buffer buffer = JavaI420Buffer.allocate(width, height);
+
+        fill(buffer.getDataY(), buffer.getStrideY(), width, height, SPEED * frameIndex);
+        fill(buffer.getDataU(), buffer.getStrideU(), width / 2, height / 2, frameIndex);
+        fill(buffer.getDataV(), buffer.getStrideV(), width / 2, height / 2, 128 - frameIndex);
+
+        VideoFrame frame = new VideoFrame(buffer, 0, startTimeNs + offsetNs);
+
+        capturerObserver.onFrameCaptured(frame);
+        frame.release();
+
+        frameIndex++;
+
+        long nextOffsetMs = TimeUnit.SECONDS.toMillis(frameIndex) / fps;
+
+        handler.postAtTime(tick, startUptimeMs + nextOffsetMs);
+    }
+
+    /**
+     * Fills a plane with the diagonal gradient shifted by a specific offset.
+     */
+    private void fill(ByteBuffer plane, int stride, int planeWidth, int planeHeight, int offset) {
+        offset &= 0xff;
+        for (int row = 0; row < planeHeight; row++) {
+            plane.position(row * stride);
+            plane.put(gradient, (row + offset) & 0xff, planeWidth);
+        }
+        plane.rewind();
+    }
+}
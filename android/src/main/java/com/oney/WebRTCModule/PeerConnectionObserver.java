@@ -43,6 +43,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     final Map<String, MediaStream> remoteStreams;
     final Map<String, MediaStreamTrack> remoteTracks;
     private final VideoTrackAdapter videoTrackAdapters;
+    private final AudioTrackAdapter audioTrackAdapters;
     private final WebRTCModule webRTCModule;
 
     /**
@@ -54,6 +55,42 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     private SoftReference<StringBuilder> statsToJSONStringBuilder
         = new SoftReference<>(null);
 
+    /**
+     * Asks the application to have the remote sender of a specific remote
+     * track generate a keyframe. There is no API for sending a keyframe
+     * request (i.e. PLI/FIR) to the remote peer from here so the application
+     * is notified with {@code peerConnectionKeyFrameRequested} and may relay
+     * the request through its signaling (e.g. to an SFU).
+     *
+     * @param trackId the ID of the remote track
+     * @return {@code true} if the track is a remote track of this
+     * {@code PeerConnection}; otherwise, {@code false}
+     */
+    boolean requestKeyFrame(String trackId) {
+        if (!remoteTracks.containsKey(trackId)) {
+            return false;
+        }
+
+        String streamReactTag = null;
+
+        for (Map.Entry<String, MediaStream> e : remoteStreams.entrySet()) {
+            for (VideoTrack videoTrack : e.getValue().videoTracks) {
+                if (videoTrack.id().equals(trackId)) {
+                    streamReactTag = e.getKey();
+                    break;
+                }
+            }
+        }
+
+        WritableMap params = Arguments.createMap();
+        params.putInt("id", id);
+        params.putString("streamReactTag", streamReactTag);
+        params.putString("trackId", trackId);
+        webRTCModule.sendEvent("peerConnectionKeyFrameRequested", params);
+
+        return true;
+    }
+
     PeerConnectionObserver(WebRTCModule webRTCModule, int id) {
         this.webRTCModule = webRTCModule;
         this.id = id;
@@ -61,6 +98,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         this.remoteStreams = new HashMap<String, MediaStream>();
         this.remoteTracks = new HashMap<String, MediaStreamTrack>();
         this.videoTrackAdapters = new VideoTrackAdapter(webRTCModule, id);
+        this.audioTrackAdapters = new AudioTrackAdapter(webRTCModule, this, id);
     }
 
     /**
@@ -123,11 +161,14 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             removeStream(localStream);
         }
 
-        // Remove video track adapters
+        // Remove video and audio track adapters
         for (MediaStream stream : remoteStreams.values()) {
             for (VideoTrack videoTrack : stream.videoTracks) {
                 videoTrackAdapters.removeAdapter(videoTrack);
             }
+            for (AudioTrack audioTrack : stream.audioTracks) {
+                audioTrackAdapters.removeAdapter(audioTrack);
+            }
         }
 
         // At this point there should be no local MediaStreams in the associated
@@ -394,6 +435,8 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             trackInfo.putString("readyState", track.state().toString());
             trackInfo.putBoolean("remote", true);
             tracks.pushMap(trackInfo);
+
+            audioTrackAdapters.addAdapter(streamReactTag, track);
         }
         params.putArray("tracks", tracks);
 
@@ -415,6 +458,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             this.remoteTracks.remove(track.id());
         }
         for (AudioTrack track : mediaStream.audioTracks) {
+            this.audioTrackAdapters.removeAdapter(track);
             this.remoteTracks.remove(track.id());
         }
 
@@ -0,0 +1,51 @@
+package com.oney.WebRTCModule;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.uimanager.annotations.ReactProp;
+import com.facebook.react.uimanager.SimpleViewManager;
+import com.facebook.react.uimanager.ThemedReactContext;
+
+public class RTCCompositorViewManager
+    extends SimpleViewManager<WebRTCCompositorView> {
+  private static final String REACT_CLASS = "RTCCompositorView";
+
+  @Override
+  public String getName() {
+    return REACT_CLASS;
+  }
+
+  @Override
+  public WebRTCCompositorView createViewInstance(ThemedReactContext context) {
+    return new WebRTCCompositorView(context);
+  }
+
+  /**
+   * Sets the tiles which a specific {@link WebRTCCompositorView} is to
+   * render. For more details, refer to the documentation of the
+   * {@code layout} property of the JavaScript counterpart of
+   * {@code WebRTCCompositorView} i.e. {@code RTCCompositorView}.
+   *
+   * @param view The {@code WebRTCCompositorView} on which the specified
+   * {@code layout} is to be set.
+   * @param layout The tiles to render.
+   */
+  @ReactProp(name = "layout")
+  public void setLayout(WebRTCCompositorView view, ReadableArray layout) {
+    view.setLayout(layout);
+  }
+
+  /**
+   * Sets whether a specific {@link WebRTCCompositorView} is to be placed in
+   * the media overlay layer (above other video views) rather than in the
+   * default layer.
+   *
+   * @param view The {@code WebRTCCompositorView} on which the specified
+   * {@code zOrder} is to be set.
+   * @param zOrder The z-order to set on the specified
+   * {@code WebRTCCompositorView}.
+   */
+  @ReactProp(name = "zOrder")
+  public void setZOrder(WebRTCCompositorView view, int zOrder) {
+    view.setZOrderMediaOverlay(zOrder > 0);
+  }
+}
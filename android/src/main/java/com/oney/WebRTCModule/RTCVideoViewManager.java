@@ -1,9 +1,11 @@
 package com.oney.WebRTCModule;
 
+import com.facebook.react.common.MapBuilder;
 import com.facebook.react.uimanager.annotations.ReactProp;
 import com.facebook.react.uimanager.SimpleViewManager;
 import com.facebook.react.uimanager.ThemedReactContext;
 
+import java.util.Map;
 
 public class RTCVideoViewManager extends SimpleViewManager<WebRTCView> {
   private static final String REACT_CLASS = "RTCVideoView";
@@ -18,6 +20,15 @@ public class RTCVideoViewManager extends SimpleViewManager<WebRTCView> {
     return new WebRTCView(context);
   }
 
+  @Override
+  public Map<String, Object> getExportedCustomDirectEventTypeConstants() {
+    return MapBuilder.<String, Object>of(
+        WebRTCView.FIRST_FRAME_RENDERED_EVENT,
+        MapBuilder.of("registrationName", "onFirstFrameRendered"),
+        WebRTCView.RENDER_STATS_EVENT,
+        MapBuilder.of("registrationName", "onRenderStats"));
+  }
+
   /**
    * Sets the indicator which determines whether a specific {@link WebRTCView}
    * is to mirror the video specified by {@code streamURL} during its rendering.
@@ -52,6 +63,42 @@ public class RTCVideoViewManager extends SimpleViewManager<WebRTCView> {
     view.setObjectFit(objectFit);
   }
 
+  /**
+   * Sets the interval at which a specific {@link WebRTCView} is to report its
+   * rendering metrics through the {@code onRenderStats} event. For more
+   * details, refer to the documentation of the {@code renderStatsInterval}
+   * property of the JavaScript counterpart of {@code WebRTCView} i.e.
+   * {@code RTCView}.
+   *
+   * @param view The {@code WebRTCView} on which the specified
+   * {@code renderStatsInterval} is to be set.
+   * @param renderStatsInterval The interval in milliseconds or zero to disable
+   * the reports.
+   */
+  @ReactProp(name = "renderStatsInterval")
+  public void setRenderStatsInterval(WebRTCView view, int renderStatsInterval) {
+    view.setRenderStatsInterval(renderStatsInterval);
+  }
+
+  /**
+   * Sets whether a specific {@link WebRTCView} is to ask for a keyframe of its
+   * (remote) video track whenever it starts rendering it. For more details,
+   * refer to the documentation of the {@code requestKeyFrameOnAttach}
+   * property of the JavaScript counterpart of {@code WebRTCView} i.e.
+   * {@code RTCView}.
+   *
+   * @param view The {@code WebRTCView} on which the specified
+   * {@code requestKeyFrameOnAttach} is to be set.
+   * @param requestKeyFrameOnAttach {@code true} to request a keyframe upon
+   * attach; otherwise, {@code false}.
+   */
+  @ReactProp(name = "requestKeyFrameOnAttach")
+  public void setRequestKeyFrameOnAttach(
+      WebRTCView view,
+      boolean requestKeyFrameOnAttach) {
+    view.setRequestKeyFrameOnAttach(requestKeyFrameOnAttach);
+  }
+
   @ReactProp(name = "streamURL")
   public void setStreamURL(WebRTCView view, String streamURL) {
     view.setStreamURL(streamURL);
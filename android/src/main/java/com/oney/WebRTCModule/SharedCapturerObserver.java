@@ -0,0 +1,59 @@
+package com.oney.WebRTCModule;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.VideoFrame;
+
+/**
+ * A {@link CapturerObserver} which delivers the frames of a single
+ * {@code VideoCapturer} to multiple {@code CapturerObserver}s (i.e. the
+ * observers of multiple {@code VideoSource}s) so that multiple tracks may be
+ * fed by one open camera.
+ */
+class SharedCapturerObserver implements CapturerObserver {
+    private final List<CapturerObserver> observers
+        = new CopyOnWriteArrayList<>();
+
+    /**
+     * Whether the capturer has started (successfully) and has not stopped
+     * since. Observers which are added to a started capturer are told that
+     * it has started right away.
+     */
+    private volatile boolean started;
+
+    void addObserver(CapturerObserver observer) {
+        observers.add(observer);
+        if (started) {
+            observer.onCapturerStarted(true);
+        }
+    }
+
+    void removeObserver(CapturerObserver observer) {
+        observers.remove(observer);
+    }
+
+    @Override
+    public void onCapturerStarted(boolean success) {
+        started = success;
+        for (CapturerObserver observer : observers) {
+            observer.onCapturerStarted(success);
+        }
+    }
+
+    @Override
+    public void onCapturerStopped() {
+        started = false;
+        for (CapturerObserver observer : observers) {
+            observer.onCapturerStopped();
+        }
+    }
+
+    @Override
+    public void onFrameCaptured(VideoFrame frame) {
+        for (CapturerObserver observer : observers) {
+            observer.onFrameCaptured(frame);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.webrtc.EglBase;
+import org.webrtc.SurfaceTextureHelper;
+
+/**
+ * Recycles the {@link SurfaceTextureHelper}s of camera capturers. Creating a
+ * {@code SurfaceTextureHelper} starts a thread, creates an EGL context and
+ * a GL texture so turning a camera off and on again is considerably faster
+ * if the helper of the disposed capturer is reused. The helpers are bound to
+ * the root {@link EglBase.Context} which was current when they were created
+ * and are, consequently, never reused after the root context is rebuilt.
+ * Invoked on the executor and on the camera executor (when a camera is being
+ * opened) so the methods are synchronized.
+ */
+class SurfaceTextureHelperPool {
+    /**
+     * The {@link Log} tag with which {@code SurfaceTextureHelperPool} is to
+     * log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The maximum number of idle {@code SurfaceTextureHelper}s kept around.
+     */
+    private static final int MAX_IDLE = 2;
+
+    /**
+     * The name of the threads of the {@code SurfaceTextureHelper}s.
+     */
+    private final String threadName;
+
+    /**
+     * The idle {@code SurfaceTextureHelper}s, most recently recycled first.
+     */
+    private final Deque<SurfaceTextureHelper> idle = new ArrayDeque<>();
+
+    /**
+     * The root {@code EglBase.Context} with which each (idle or acquired)
+     * {@code SurfaceTextureHelper} was created.
+     */
+    private final Map<SurfaceTextureHelper, EglBase.Context> eglContexts
+        = new IdentityHashMap<>();
+
+    SurfaceTextureHelperPool(String threadName) {
+        this.threadName = threadName;
+    }
+
+    /**
+     * Gets an idle {@link SurfaceTextureHelper} which shares the current root
+     * {@link EglBase.Context} or creates a new one.
+     */
+    synchronized SurfaceTextureHelper acquire() {
+        EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
+
+        while (!idle.isEmpty()) {
+            SurfaceTextureHelper helper = idle.pop();
+
+            if (eglContexts.get(helper) == eglContext) {
+                Log.d(TAG, "Reusing a pooled SurfaceTextureHelper");
+                return helper;
+            }
+            dispose(helper);
+        }
+
+        SurfaceTextureHelper helper
+            = SurfaceTextureHelper.create(threadName, eglContext);
+
+        if (helper != null) {
+            eglContexts.put(helper, eglContext);
+        }
+
+        return helper;
+    }
+
+    /**
+     * Returns a {@link SurfaceTextureHelper} acquired from this pool after
+     * the capturer which used it has been disposed of. The helper is disposed
+     * of if it does not share the current root {@link EglBase.Context} or if
+     * the pool is full.
+     */
+    synchronized void recycle(SurfaceTextureHelper helper) {
+        if (!eglContexts.containsKey(helper)) {
+            // Not acquired from this pool.
+            helper.dispose();
+            return;
+        }
+
+        if (eglContexts.get(helper) != EglUtils.getRootEglBaseContext()
+                || idle.size() >= MAX_IDLE) {
+            dispose(helper);
+            return;
+        }
+
+        // The disposed capturer may have stopped listening asynchronously
+        // already but make sure the next one is able to start listening.
+        helper.stopListening();
+        idle.push(helper);
+    }
+
+    /**
+     * Disposes of all idle {@link SurfaceTextureHelper}s. Invoked when the
+     * root {@link EglBase.Context} gets rebuilt.
+     */
+    synchronized void flush() {
+        while (!idle.isEmpty()) {
+            dispose(idle.pop());
+        }
+    }
+
+    private synchronized void dispose(SurfaceTextureHelper helper) {
+        eglContexts.remove(helper);
+        helper.dispose();
+    }
+}
@@ -1,7 +1,9 @@
 package com.oney.WebRTCModule;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 final class ThreadUtils {
     /**
@@ -12,6 +14,14 @@ final class ThreadUtils {
     private static final ExecutorService executor
         = Executors.newSingleThreadExecutor();
 
+    /**
+     * Thread which will be used to open cameras. Opening a camera may take
+     * hundreds of milliseconds so it is done off the executor in order to
+     * not delay e.g. the creation of audio tracks.
+     */
+    private static final ExecutorService cameraExecutor
+        = Executors.newSingleThreadExecutor();
+
     /**
      * Runs the given {@link Runnable} on the executor.
      * @param runnable
@@ -19,4 +29,21 @@ final class ThreadUtils {
     public static void runOnExecutor(Runnable runnable) {
         executor.execute(runnable);
     }
+
+    /**
+     * Runs the given {@link Runnable} on the camera executor.
+     * @param runnable
+     */
+    public static void runOnCameraExecutor(Runnable runnable) {
+        cameraExecutor.execute(runnable);
+    }
+
+    /**
+     * Runs the given {@link Callable} on the camera executor.
+     * @param callable
+     * @return a {@link Future} representing the result of the callable
+     */
+    public static <T> Future<T> submitToCameraExecutor(Callable<T> callable) {
+        return cameraExecutor.submit(callable);
+    }
 }
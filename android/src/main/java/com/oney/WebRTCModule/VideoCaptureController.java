@@ -1,15 +1,26 @@
 package com.oney.WebRTCModule;
 
+import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
 
 import org.webrtc.CameraEnumerator;
 import org.webrtc.CameraVideoCapturer;
+import org.webrtc.SurfaceTextureHelper;
 import org.webrtc.VideoCapturer;
+import org.webrtc.VideoSource;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 
 public class VideoCaptureController {
     /**
@@ -21,35 +32,168 @@ public class VideoCaptureController {
     private boolean isFrontFacing;
 
     /**
-     * Values for width, height and fps (respectively) which will be
-     * used to open the camera at.
+     * The native capture format the camera is to be opened at. The largest of
+     * the formats requested by the tracks fed by this controller.
      */
-    private final int width;
-    private final int height;
-    private final int fps;
+    private CaptureFormatSelector.Format format;
+
+    /**
+     * A track fed by this controller.
+     */
+    private static class Consumer {
+        final VideoSource videoSource;
+        CaptureFormatSelector.Format format;
+        boolean enabled = true;
+
+        /**
+         * The scales applied to the resolution and frame rate of
+         * {@link #format} in order to relieve the device of load.
+         */
+        float scale = 1f;
+        float fpsScale = 1f;
+
+        int getWidth() {
+            return Math.max(1, Math.round(format.width * scale));
+        }
+
+        int getHeight() {
+            return Math.max(1, Math.round(format.height * scale));
+        }
+
+        int getFps() {
+            return Math.max(1, Math.round(format.fps * fpsScale));
+        }
+
+        void adaptOutputFormat() {
+            videoSource.adaptOutputFormat(getWidth(), getHeight(), getFps());
+        }
+
+        Consumer(VideoSource videoSource, CaptureFormatSelector.Format format) {
+            this.videoSource = videoSource;
+            this.format = format;
+        }
+    }
+
+    /**
+     * The tracks fed by this controller by track ID. The camera is open while
+     * at least one of them is enabled.
+     */
+    private final Map<String, Consumer> consumers = new LinkedHashMap<>();
+
+    /**
+     * Delivers the frames of {@link #videoCapturer} to the
+     * {@code VideoSource}s of all {@link #consumers}.
+     */
+    private final SharedCapturerObserver capturerObserver
+        = new SharedCapturerObserver();
 
     private CameraEnumerator cameraEnumerator;
 
     /**
      * The {@link CameraEventsHandler} used with
-     * {@link CameraEnumerator#createCapturer}. Cached because the
-     * implementation does not do anything but logging unspecific to the camera
-     * device's name anyway.
+     * {@link CameraEnumerator#createCapturer}. Records the timing of the
+     * camera pipeline of this controller across capturer recreations.
      */
     private final CameraEventsHandler cameraEventsHandler
-        = new CameraEventsHandler();
+        = new CameraEventsHandler(this::onCameraStalled);
 
     /**
      * {@link VideoCapturer} which this controller manages.
      */
     private VideoCapturer videoCapturer;
 
+    /**
+     * The name of the camera device {@link #videoCapturer} captures from.
+     */
+    private String deviceName;
+
+    /**
+     * The arguments {@link #videoCapturer} was initialized with. Retained so
+     * that a new {@code VideoCapturer} may take its place (e.g. when the root
+     * EGL context gets rebuilt). {@code VideoCaptureController} owns
+     * {@link #surfaceTextureHelper} and returns it to
+     * {@link #surfaceTextureHelperPool} (if any) when done with it.
+     */
+    private SurfaceTextureHelper surfaceTextureHelper;
+    private SurfaceTextureHelperPool surfaceTextureHelperPool;
+    private Context context;
+
+    /**
+     * Whether the camera devices are front facing by device name.
+     */
+    private static final Map<String, Boolean> frontFacingCache = new HashMap<>();
+
+    /**
+     * Whether {@link #videoCapturer} has been started and not stopped since.
+     */
+    private boolean capturing;
+
+    /**
+     * Interface implemented by {@code GetUserMediaImpl} in order to report
+     * the stalls of the camera and their recoveries.
+     */
+    public interface CaptureStateListener {
+        /**
+         * Invoked on the executor when the camera has stalled and the
+         * capturer is about to be restarted.
+         *
+         * @param reason {@code timeout}, {@code freeze}, {@code error} or
+         * {@code disconnected}
+         * @param attempt the number of the restart since the stall started
+         */
+        void onCaptureStalled(VideoCaptureController controller, String reason, int attempt);
+
+        /**
+         * Invoked on the executor when the camera delivers frames again.
+         *
+         * @param stallDuration the duration of the stall in milliseconds
+         */
+        void onCaptureRecovered(VideoCaptureController controller, long stallDuration);
+    }
+
+    /**
+     * The interval in milliseconds at which the frames of the camera are
+     * checked for a stall and the durations without frames after which the
+     * camera is considered stalled.
+     */
+    private static final long WATCHDOG_INTERVAL = 1000;
+    private static final long STALL_TIMEOUT = 3000;
+    private static final long FIRST_FRAME_TIMEOUT = 6000;
+
+    /**
+     * The bounds of the delay between two restarts of a stalled capturer.
+     * The delay doubles with every restart but is never shorter than
+     * {@link #FIRST_FRAME_TIMEOUT}.
+     */
+    private static final long MIN_RECOVERY_DELAY = 1000;
+    private static final long MAX_RECOVERY_DELAY = 30000;
+
+    /**
+     * The timer which checks the cameras of all controllers for stalls.
+     */
+    private static Timer watchdogTimer;
+
+    private CaptureStateListener captureStateListener;
+    private TimerTask watchdogTask;
+
+    /**
+     * The time at which the current stall started (zero if the camera is not
+     * stalled), the number of restarts since and the time before which the
+     * capturer is not to be restarted again.
+     */
+    private long stallStartTime;
+    private int recoveryAttempts;
+    private long nextRecoveryTime;
+
+    /**
+     * Whether the capturer is being restarted in order to recover from a
+     * stall.
+     */
+    private boolean recovering;
+
     public VideoCaptureController(CameraEnumerator cameraEnumerator, ReadableMap constraints) {
         this.cameraEnumerator = cameraEnumerator;
-
-        width = constraints.getInt("width");
-        height = constraints.getInt("height");
-        fps = constraints.getInt("frameRate");
+        capturerObserver.addObserver(cameraEventsHandler);
 
         String deviceId = ReactBridgeUtil.getMapStrValue(constraints, "deviceId");
         String facingMode = ReactBridgeUtil.getMapStrValue(constraints, "facingMode");
@@ -57,20 +201,509 @@ public class VideoCaptureController {
         videoCapturer = createVideoCapturer(deviceId, facingMode);
     }
 
+    /**
+     * Initializes a new {@code VideoCaptureController} which manages a
+     * specific {@link VideoCapturer} other than a camera (e.g. a screen
+     * capturer). Such a controller is not shared by multiple
+     * {@code getUserMedia} calls and its capturer cannot be recreated.
+     */
+    public VideoCaptureController(VideoCapturer videoCapturer) {
+        this.videoCapturer = videoCapturer;
+    }
+
+    /**
+     * Gets the settings of a specific track fed by this controller in the
+     * format of {@code MediaTrackSettings}. The width, height and frame rate
+     * are the ones the track is fed with i.e. scaled down if the track is
+     * adapted to the load of the device; the ones requested by its
+     * constraints are {@code baseWidth}, {@code baseHeight} and
+     * {@code baseFrameRate}.
+     */
+    public WritableMap getSettings(String trackId) {
+        Consumer consumer = consumers.get(trackId);
+        WritableMap settings = Arguments.createMap();
+
+        if (consumer != null) {
+            settings.putInt("width", consumer.getWidth());
+            settings.putInt("height", consumer.getHeight());
+            settings.putInt("frameRate", consumer.getFps());
+            settings.putInt("baseWidth", consumer.format.width);
+            settings.putInt("baseHeight", consumer.format.height);
+            settings.putInt("baseFrameRate", consumer.format.fps);
+        }
+        if (cameraEnumerator != null) {
+            settings.putString("facingMode", isFrontFacing ? "user" : "environment");
+        }
+
+        return settings;
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    /**
+     * Determines whether the camera of this controller satisfies specific
+     * {@code deviceId} and {@code facingMode} constraints so that a new track
+     * with these constraints may share it.
+     */
+    public boolean matches(String deviceId, String facingMode) {
+        if (deviceName == null) {
+            return false;
+        }
+        if (deviceId != null) {
+            return deviceId.equals(deviceName);
+        }
+        return isFrontFacing == (facingMode == null || !facingMode.equals("environment"));
+    }
+
+    /**
+     * Selects the native capture format of the camera of this controller
+     * which best satisfies specific constraints.
+     */
+    public CaptureFormatSelector.Format selectFormat(ReadableMap constraints) {
+        return new CaptureFormatSelector(constraints)
+            .select(cameraEnumerator, deviceName);
+    }
+
+    /**
+     * Starts feeding a (new) track with the frames of the camera of this
+     * controller. The frames are adapted to a specific format by the
+     * {@code VideoSource} of the track and the camera is switched to that
+     * format if it is larger than the formats of the other tracks.
+     *
+     * @param trackId the ID of the track
+     * @param videoSource the {@code VideoSource} of the track
+     * @param format the format the track is to be fed with
+     */
+    public void addTrack(
+            String trackId,
+            VideoSource videoSource,
+            CaptureFormatSelector.Format format) {
+        Consumer consumer = new Consumer(videoSource, format);
+
+        consumers.put(trackId, consumer);
+        consumer.adaptOutputFormat();
+        capturerObserver.addObserver(videoSource.getCapturerObserver());
+
+        updateCaptureFormat(true);
+        updateCapturing();
+    }
+
+    /**
+     * Changes the format a specific track is fed with without closing and
+     * reopening the camera if possible: a format which fits within the
+     * current format of the camera is produced by the {@code VideoSource} of
+     * the track alone; otherwise, the format of the camera is changed.
+     *
+     * @param trackId the ID of the track
+     * @param constraints the new (normalized) video constraints of the track
+     * @return the new settings of the track or {@code null} if the track is
+     * not fed by this controller
+     */
+    public WritableMap applyConstraints(String trackId, ReadableMap constraints) {
+        Consumer consumer = consumers.get(trackId);
+
+        if (consumer == null) {
+            return null;
+        }
+
+        CaptureFormatSelector.Format newFormat = selectFormat(constraints);
+
+        consumer.format = newFormat;
+        consumer.adaptOutputFormat();
+        updateCaptureFormat(false);
+
+        return getSettings(trackId);
+    }
+
+    /**
+     * Scales down (or back up) the format a specific track is fed with, on
+     * top of the format requested by its constraints, without touching the
+     * camera.
+     *
+     * @param trackId the ID of the track
+     * @param scale the scale of the resolution
+     * @param fpsScale the scale of the frame rate
+     * @return the new settings of the track or {@code null} if the track is
+     * not fed by this controller
+     */
+    public WritableMap setTrackScale(String trackId, float scale, float fpsScale) {
+        Consumer consumer = consumers.get(trackId);
+
+        if (consumer == null) {
+            return null;
+        }
+
+        consumer.scale = scale;
+        consumer.fpsScale = fpsScale;
+        consumer.adaptOutputFormat();
+
+        return getSettings(trackId);
+    }
+
+    /**
+     * Stops feeding a specific track.
+     *
+     * @param trackId the ID of the track
+     * @return {@code true} if no track is fed by this controller anymore and
+     * the camera has been closed i.e. this controller may be disposed
+     */
+    public boolean removeTrack(String trackId) {
+        Consumer consumer = consumers.remove(trackId);
+
+        if (consumer != null) {
+            capturerObserver.removeObserver(
+                consumer.videoSource.getCapturerObserver());
+        }
+        if (consumers.isEmpty()) {
+            return stopCapture();
+        }
+
+        updateCaptureFormat(true);
+        updateCapturing();
+
+        return false;
+    }
+
+    /**
+     * Enables or disables a specific track. The camera is closed while all
+     * tracks fed by this controller are disabled.
+     */
+    public void setTrackEnabled(String trackId, boolean enabled) {
+        Consumer consumer = consumers.get(trackId);
+
+        if (consumer != null) {
+            consumer.enabled = enabled;
+            updateCapturing();
+        }
+    }
+
+    /**
+     * Opens the camera at the native format which covers the formats
+     * requested by all tracks fed by this controller (i.e. their largest
+     * width, height and frame rate), changing the format of an open camera
+     * if necessary.
+     *
+     * @param shrink whether the format of the camera may be reduced if it is
+     * larger than necessary. Reducing it restarts the camera so it is avoided
+     * when the tracks may change their formats again soon.
+     */
+    private void updateCaptureFormat(boolean shrink) {
+        CaptureFormatSelector.Format required = null;
+
+        for (Consumer consumer : consumers.values()) {
+            CaptureFormatSelector.Format f = consumer.format;
+
+            required
+                = required == null
+                    ? f
+                    : new CaptureFormatSelector.Format(
+                        Math.max(f.width, required.width),
+                        Math.max(f.height, required.height),
+                        Math.max(f.fps, required.fps));
+        }
+
+        // The combination of the formats of the tracks is not necessarily
+        // supported by the camera so pick the closest native format which
+        // covers it.
+        CaptureFormatSelector.Format newFormat
+            = required == null
+                ? null
+                : new CaptureFormatSelector(required)
+                    .select(cameraEnumerator, deviceName);
+
+        if (newFormat == null
+                || (format != null
+                    && format.width == newFormat.width
+                    && format.height == newFormat.height
+                    && format.fps == newFormat.fps)) {
+            return;
+        }
+        if (!shrink
+                && format != null
+                && format.width * format.height
+                    >= newFormat.width * newFormat.height
+                && format.fps >= newFormat.fps) {
+            return;
+        }
+
+        format = newFormat;
+        if (capturing && videoCapturer != null) {
+            Log.d(TAG, "Changing capture format to " + format);
+            videoCapturer.changeCaptureFormat(format.width, format.height, format.fps);
+        }
+    }
+
+    private void updateCapturing() {
+        boolean enabled = false;
+
+        for (Consumer consumer : consumers.values()) {
+            enabled |= consumer.enabled;
+        }
+
+        if (enabled && !capturing) {
+            startCapture();
+        } else if (!enabled && capturing) {
+            stopCapture();
+        }
+    }
+
     public void dispose() {
+        stopWatchdog();
         if (videoCapturer != null) {
             videoCapturer.dispose();
             videoCapturer = null;
         }
+        releaseSurfaceTextureHelper();
+    }
+
+    private void releaseSurfaceTextureHelper() {
+        if (surfaceTextureHelper != null) {
+            if (surfaceTextureHelperPool != null) {
+                surfaceTextureHelperPool.recycle(surfaceTextureHelper);
+            } else {
+                surfaceTextureHelper.dispose();
+            }
+            surfaceTextureHelper = null;
+        }
+    }
+
+    public void setCaptureStateListener(CaptureStateListener captureStateListener) {
+        this.captureStateListener = captureStateListener;
+    }
+
+    /**
+     * Gets the IDs of the tracks fed by this controller.
+     */
+    public List<String> getTrackIds() {
+        return new ArrayList<>(consumers.keySet());
+    }
+
+    /**
+     * Starts checking the frames of the camera for a stall. Cameras only
+     * because other capturers (e.g. of the screen) legitimately stop
+     * delivering frames when there is nothing new to capture.
+     */
+    private void startWatchdog() {
+        if (cameraEnumerator == null || watchdogTask != null) {
+            return;
+        }
+
+        synchronized (VideoCaptureController.class) {
+            if (watchdogTimer == null) {
+                watchdogTimer = new Timer("CameraWatchdogTimer", true);
+            }
+        }
+
+        watchdogTask = new TimerTask() {
+            @Override
+            public void run() {
+                ThreadUtils.runOnExecutor(VideoCaptureController.this::checkStall);
+            }
+        };
+        watchdogTimer.schedule(watchdogTask, WATCHDOG_INTERVAL, WATCHDOG_INTERVAL);
+    }
+
+    private void stopWatchdog() {
+        if (watchdogTask != null) {
+            watchdogTask.cancel();
+            watchdogTask = null;
+        }
+    }
+
+    /**
+     * Determines whether the camera has recovered from a stall or has
+     * stalled judging by the time of its last frame. Runs on the executor.
+     */
+    private void checkStall() {
+        if (!capturing || watchdogTask == null) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        long lastFrameTime = cameraEventsHandler.getLastFrameTime();
+
+        if (stallStartTime != 0) {
+            if (lastFrameTime > stallStartTime) {
+                long stallDuration = now - stallStartTime;
+
+                Log.d(TAG, "Camera " + deviceName + " recovered after "
+                    + stallDuration + " ms");
+                resetStall();
+                if (captureStateListener != null) {
+                    captureStateListener.onCaptureRecovered(this, stallDuration);
+                }
+            } else {
+                handleStall("timeout");
+            }
+            return;
+        }
+
+        long elapsed
+            = lastFrameTime != 0
+                ? now - lastFrameTime
+                : now - cameraEventsHandler.getCaptureRequestedTime();
+
+        if (elapsed > (lastFrameTime != 0 ? STALL_TIMEOUT : FIRST_FRAME_TIMEOUT)) {
+            handleStall("timeout");
+        }
+    }
+
+    /**
+     * Invoked by {@link #cameraEventsHandler} on the camera thread when the
+     * camera reports a freeze, an error or a disconnect.
+     */
+    private void onCameraStalled(String reason) {
+        ThreadUtils.runOnExecutor(() -> handleStall(reason));
+    }
+
+    /**
+     * Restarts the capturer of a stalled camera unless it has been restarted
+     * too recently. The {@code VideoSource}s and, consequently, the tracks
+     * are kept so the restart is invisible to the remote side.
+     */
+    private void handleStall(String reason) {
+        if (!capturing || cameraEnumerator == null) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+
+        if (stallStartTime == 0) {
+            stallStartTime = now;
+            Log.w(TAG, "Camera " + deviceName + " stalled (" + reason + ")");
+        }
+        if (now < nextRecoveryTime) {
+            return;
+        }
+
+        // Give the restarted camera at least as long to deliver its first
+        // frame as on a normal start before restarting it again.
+        recoveryAttempts++;
+        nextRecoveryTime
+            = now + Math.max(
+                Math.min(
+                    MIN_RECOVERY_DELAY << Math.min(recoveryAttempts - 1, 5),
+                    MAX_RECOVERY_DELAY),
+                FIRST_FRAME_TIMEOUT);
+
+        if (captureStateListener != null) {
+            captureStateListener.onCaptureStalled(this, reason, recoveryAttempts);
+        }
+
+        Log.d(TAG, "Restarting the capturer of camera " + deviceName
+            + " (attempt " + recoveryAttempts + ")");
+        recovering = true;
+        try {
+            reinitialize();
+        } finally {
+            recovering = false;
+        }
+    }
+
+    private void resetStall() {
+        stallStartTime = 0;
+        recoveryAttempts = 0;
+        nextRecoveryTime = 0;
+    }
+
+    public SurfaceTextureHelper getSurfaceTextureHelper() {
+        return surfaceTextureHelper;
     }
 
     public VideoCapturer getVideoCapturer() {
         return videoCapturer;
     }
 
+    /**
+     * Initializes the managed {@link VideoCapturer}. The specified
+     * {@code surfaceTextureHelper} is owned by this controller from now on.
+     */
+    public void initialize(
+            SurfaceTextureHelper surfaceTextureHelper,
+            Context context) {
+        this.surfaceTextureHelper = surfaceTextureHelper;
+        this.context = context;
+
+        videoCapturer.initialize(surfaceTextureHelper, context, capturerObserver);
+    }
+
+    /**
+     * Initializes the managed {@link VideoCapturer} with a
+     * {@link SurfaceTextureHelper} acquired from a specific pool. The helper
+     * is returned to the pool when this controller is disposed of.
+     */
+    public void initialize(
+            SurfaceTextureHelperPool surfaceTextureHelperPool,
+            Context context) {
+        this.surfaceTextureHelperPool = surfaceTextureHelperPool;
+        initialize(surfaceTextureHelperPool.acquire(), context);
+    }
+
+    /**
+     * Replaces the managed {@link VideoCapturer} with a new one which captures
+     * from the same camera device through a new {@link SurfaceTextureHelper}
+     * (acquired from {@link #surfaceTextureHelperPool}) and delivers to the
+     * same {@code VideoSource}s. The {@code MediaSource}s and tracks fed by
+     * this controller are not affected. Used to move capturing onto a new
+     * root EGL context.
+     */
+    public void reinitialize() {
+        if (cameraEnumerator == null || surfaceTextureHelperPool == null) {
+            // The capturer cannot be recreated (e.g. the permission to capture
+            // the screen is single-use). It keeps running in the old share
+            // group.
+            return;
+        }
+
+        boolean wasCapturing = capturing;
+
+        if (wasCapturing) {
+            stopCapture();
+        }
+        if (videoCapturer != null) {
+            videoCapturer.dispose();
+            videoCapturer = null;
+        }
+        releaseSurfaceTextureHelper();
+        surfaceTextureHelper = surfaceTextureHelperPool.acquire();
+
+        if (deviceName != null) {
+            videoCapturer
+                = cameraEnumerator.createCapturer(deviceName, cameraEventsHandler);
+        }
+        if (videoCapturer == null) {
+            Log.w(TAG, "Failed to recreate the capturer for camera " + deviceName);
+            return;
+        }
+
+        videoCapturer.initialize(surfaceTextureHelper, context, capturerObserver);
+        if (wasCapturing) {
+            startCapture();
+        }
+    }
+
+    /**
+     * Starts capturing in a specific format before any track is added so
+     * that the camera opens while e.g. the audio track of the same
+     * {@code getUserMedia} call is being created. Tracks requesting the same
+     * format are then fed without restarting the camera.
+     */
+    public void startCapture(CaptureFormatSelector.Format format) {
+        this.format = format;
+        startCapture();
+    }
+
     public void startCapture() {
+        if (videoCapturer == null || format == null) {
+            return;
+        }
         try {
-            videoCapturer.startCapture(width, height, fps);
+            cameraEventsHandler.onCaptureRequested();
+            videoCapturer.startCapture(format.width, format.height, format.fps);
+            capturing = true;
+            startWatchdog();
         } catch (RuntimeException e) {
             // XXX This can only fail if we initialize the capturer incorrectly,
             // which we don't. Thus, ignore any failures here since we trust
@@ -79,14 +712,32 @@ public class VideoCaptureController {
     }
 
     public boolean stopCapture() {
+        if (videoCapturer == null) {
+            return true;
+        }
         try {
             videoCapturer.stopCapture();
+            capturing = false;
+            stopWatchdog();
+            if (!recovering) {
+                resetStall();
+            }
             return true;
         } catch (InterruptedException e) {
             return false;
         }
     }
 
+    /**
+     * Gets the timing of the camera pipeline of this controller.
+     *
+     * @return the metrics or {@code null} if this controller does not
+     * manage a camera
+     */
+    public WritableMap getCameraMetrics() {
+        return cameraEnumerator == null ? null : cameraEventsHandler.getMetrics();
+    }
+
     public void switchCamera() {
         if (videoCapturer instanceof CameraVideoCapturer) {
             CameraVideoCapturer capturer = (CameraVideoCapturer) videoCapturer;
@@ -98,55 +749,137 @@ public class VideoCaptureController {
                 return;
             }
 
-            // The usual case.
+            cameraEventsHandler.onCameraSwitchStarted();
+
+            // The usual case. CameraVideoCapturer#switchCamera moves on to
+            // the other camera within the same capturer.
             if (deviceCount == 2) {
                 capturer.switchCamera(new CameraVideoCapturer.CameraSwitchHandler() {
                     @Override
                     public void onCameraSwitchDone(boolean b) {
                         isFrontFacing = b;
+                        onCameraSwitched(deviceNames);
+                        cameraEventsHandler.onCameraSwitchDone();
                     }
 
                     @Override
                     public void onCameraSwitchError(String s) {
                         Log.e(TAG, "Error switching camera: " + s);
+                        cameraEventsHandler.onCameraSwitchDone();
                     }
                 });
                 return;
             }
 
-            // If we are here the device has more than 2 cameras. Cycle through them
-            // and switch to the first one of the desired facing mode.
-            switchCamera(!isFrontFacing, deviceCount);
+            // If we are here the device has more than 2 cameras. Go
+            // directly to the first camera of the other facing mode rather
+            // than cycling through the cameras, which opens and closes each
+            // one of them.
+            String target = getSwitchTarget(deviceNames);
+
+            if (target == null) {
+                Log.w(TAG, "No camera to switch to");
+                cameraEventsHandler.onCameraSwitchDone();
+            } else {
+                switchCamera(target);
+            }
         }
     }
 
     /**
-     * Helper function which tries to switch cameras until the desired facing mode is found.
+     * Updates {@link #deviceName} after a successful camera switch.
+     * {@link CameraVideoCapturer#switchCamera} always moves on to the camera
+     * device which follows the current one in the enumeration order.
      *
-     * @param desiredFrontFacing - The desired front facing value.
-     * @param tries - How many times to try switching.
+     * @param deviceNames the camera device names in enumeration order
      */
-    private void switchCamera(boolean desiredFrontFacing, int tries) {
-        CameraVideoCapturer capturer = (CameraVideoCapturer) videoCapturer;
+    private void onCameraSwitched(String[] deviceNames) {
+        for (int i = 0; i < deviceNames.length; i++) {
+            if (deviceNames[i].equals(deviceName)) {
+                deviceName = deviceNames[(i + 1) % deviceNames.length];
+                break;
+            }
+        }
+    }
 
-        capturer.switchCamera(new CameraVideoCapturer.CameraSwitchHandler() {
-            @Override
-            public void onCameraSwitchDone(boolean b) {
-                if (b != desiredFrontFacing) {
-                    int newTries = tries-1;
-                    if (newTries > 0) {
-                        switchCamera(desiredFrontFacing, newTries);
-                    }
-                } else {
-                    isFrontFacing = desiredFrontFacing;
+    /**
+     * Gets the name of the camera device {@link #switchCamera()} is to switch
+     * to i.e. the first one in enumeration order (usually the main camera)
+     * whose facing mode is the opposite of the current one.
+     */
+    private String getSwitchTarget(String[] deviceNames) {
+        for (String name : deviceNames) {
+            if (!name.equals(deviceName)
+                    && isFrontFacing(cameraEnumerator, name) != isFrontFacing) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines whether a specific camera device is front facing. Cached
+     * because the Camera1 API has to be queried for every device and may
+     * throw.
+     */
+    private static boolean isFrontFacing(CameraEnumerator cameraEnumerator, String name) {
+        synchronized (frontFacingCache) {
+            Boolean frontFacing = frontFacingCache.get(name);
+
+            if (frontFacing == null) {
+                try {
+                    frontFacing = cameraEnumerator.isFrontFacing(name);
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to check the facing mode of camera " + name, e);
+                    frontFacing = false;
                 }
+                frontFacingCache.put(name, frontFacing);
             }
 
-            @Override
-            public void onCameraSwitchError(String s) {
-                Log.e(TAG, "Error switching camera: " + s);
+            return frontFacing;
+        }
+    }
+
+    /**
+     * Switches to a specific camera device by replacing the managed
+     * {@link VideoCapturer} with a new one on the same capture thread. The
+     * current camera is closed and the target camera is opened once only.
+     * The switch is reported done by {@link CameraEventsHandler} once the
+     * target camera has been opened (or has failed to open).
+     */
+    private void switchCamera(String target) {
+        boolean wasCapturing = capturing;
+
+        if (wasCapturing) {
+            stopCapture();
+        }
+
+        String previousDeviceName = deviceName;
+        VideoCapturer capturer
+            = cameraEnumerator.createCapturer(target, cameraEventsHandler);
+
+        if (capturer == null) {
+            Log.w(TAG, "Failed to create the capturer for camera " + target);
+            cameraEventsHandler.onCameraSwitchDone();
+            if (wasCapturing) {
+                startCapture();
             }
-        });
+            return;
+        }
+        videoCapturer.dispose();
+        videoCapturer = capturer;
+        videoCapturer.initialize(surfaceTextureHelper, context, capturerObserver);
+
+        deviceName = target;
+        isFrontFacing = isFrontFacing(cameraEnumerator, target);
+        Log.d(TAG, "Switched from camera " + previousDeviceName + " to " + target);
+
+        if (wasCapturing) {
+            startCapture();
+        } else {
+            // No camera is to be opened.
+            cameraEventsHandler.onCameraSwitchDone();
+        }
     }
 
     /**
@@ -176,6 +909,7 @@ public class VideoCaptureController {
                     if (videoCapturer != null) {
                         Log.d(TAG, message + " succeeded");
                         this.isFrontFacing = cameraEnumerator.isFrontFacing(name);
+                        this.deviceName = name;
                         return videoCapturer;
                     } else {
                         Log.d(TAG, message + " failed");
@@ -212,6 +946,7 @@ public class VideoCaptureController {
             if (videoCapturer != null) {
                 Log.d(TAG, message + " succeeded");
                 this.isFrontFacing = cameraEnumerator.isFrontFacing(name);
+                this.deviceName = name;
                 return videoCapturer;
             } else {
                 Log.d(TAG, message + " failed");
@@ -228,6 +963,7 @@ public class VideoCaptureController {
                 if (videoCapturer != null) {
                     Log.d(TAG, message + " succeeded");
                     this.isFrontFacing = cameraEnumerator.isFrontFacing(name);
+                    this.deviceName = name;
                     return videoCapturer;
                 } else {
                     Log.d(TAG, message + " failed");
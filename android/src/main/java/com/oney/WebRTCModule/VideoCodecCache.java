@@ -0,0 +1,181 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.VideoCodecInfo;
+
+/**
+ * Persists the video codecs supported by the hardware / software video
+ * encoder and decoder factories across application launches. Listing them
+ * queries {@code MediaCodecList}, which takes tens to hundreds of
+ * milliseconds on some devices, every time the {@code PeerConnectionFactory}
+ * is created. The cached lists are valid for the build fingerprint of the
+ * device (which identifies the OS build as well) and the installation of the
+ * application (so that an update of the application, and of the library with
+ * it, invalidates them). They are also revalidated in the background after
+ * they have been used so that e.g. a codec update pushed outside of an OS
+ * update is picked up on the next launch.
+ */
+class VideoCodecCache {
+    /**
+     * The {@link Log} tag with which {@code VideoCodecCache} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    private static final String PREFERENCES_NAME = "WebRTCModule.VideoCodecCache";
+
+    /**
+     * Lists the supported codecs of a video encoder / decoder factory.
+     */
+    interface Probe {
+        VideoCodecInfo[] getSupportedCodecs();
+    }
+
+    private final SharedPreferences preferences;
+
+    /**
+     * The time at which the application was last installed or updated.
+     */
+    private final long lastUpdateTime;
+
+    VideoCodecCache(Context context) {
+        preferences
+            = context.getApplicationContext()
+                .getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        lastUpdateTime = getLastUpdateTime(context);
+    }
+
+    private static long getLastUpdateTime(Context context) {
+        try {
+            return context.getPackageManager()
+                .getPackageInfo(context.getPackageName(), 0)
+                .lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException | RuntimeException e) {
+            Log.w(TAG, "Failed to get the last update time of the application", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Gets the supported codecs of a specific factory, probing them and
+     * caching the result if they have not been cached on this build of the
+     * device and installation of the application. Otherwise, the cached ones
+     * are returned and a probe in the background updates the cache if they
+     * have changed.
+     *
+     * @param key the key of the factory (and its configuration)
+     * @param probe lists the supported codecs of the factory
+     */
+    VideoCodecInfo[] getSupportedCodecs(
+            String key,
+            Probe probe) {
+        VideoCodecInfo[] codecs = get(key);
+
+        if (codecs == null) {
+            codecs = probe.getSupportedCodecs();
+            put(key, codecs);
+        } else {
+            Log.d(TAG, "Using the cached video codecs of " + key);
+            revalidate(key, codecs, probe);
+        }
+
+        return codecs;
+    }
+
+    private void revalidate(
+            String key,
+            VideoCodecInfo[] codecs,
+            Probe probe) {
+        Thread thread = new Thread(() -> {
+            VideoCodecInfo[] probedCodecs = probe.getSupportedCodecs();
+
+            if (!Arrays.equals(codecs, probedCodecs)) {
+                // Only the next launch will use them. The
+                // PeerConnectionFactory has listed the codecs already.
+                Log.i(TAG, "The supported video codecs of " + key + " changed");
+                put(key, probedCodecs);
+            }
+        }, "VideoCodecProbeThread");
+
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    private VideoCodecInfo[] get(String key) {
+        String value = preferences.getString(key, null);
+
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            JSONObject json = new JSONObject(value);
+
+            if (!Build.FINGERPRINT.equals(json.getString("fingerprint"))
+                    || lastUpdateTime != json.optLong("lastUpdateTime")) {
+                return null;
+            }
+
+            JSONArray jsonCodecs = json.getJSONArray("codecs");
+            VideoCodecInfo[] codecs = new VideoCodecInfo[jsonCodecs.length()];
+
+            for (int i = 0; i < codecs.length; i++) {
+                JSONObject jsonCodec = jsonCodecs.getJSONObject(i);
+                JSONObject jsonParams = jsonCodec.getJSONObject("params");
+                Map<String, String> params = new HashMap<>();
+
+                for (Iterator<String> it = jsonParams.keys(); it.hasNext();) {
+                    String name = it.next();
+
+                    params.put(name, jsonParams.getString(name));
+                }
+                codecs[i] = new VideoCodecInfo(jsonCodec.getString("name"), params);
+            }
+
+            return codecs;
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to read the cached video codecs of " + key, e);
+            return null;
+        }
+    }
+
+    private void put(String key, VideoCodecInfo[] codecs) {
+        try {
+            JSONArray jsonCodecs = new JSONArray();
+
+            for (VideoCodecInfo codec : codecs) {
+                JSONObject jsonParams = new JSONObject();
+
+                for (Map.Entry<String, String> e : codec.params.entrySet()) {
+                    jsonParams.put(e.getKey(), e.getValue());
+                }
+                jsonCodecs.put(
+                    new JSONObject()
+                        .put("name", codec.name)
+                        .put("params", jsonParams));
+            }
+
+            JSONObject json
+                = new JSONObject()
+                    .put("fingerprint", Build.FINGERPRINT)
+                    .put("lastUpdateTime", lastUpdateTime)
+                    .put("codecs", jsonCodecs);
+
+            preferences.edit().putString(key, json.toString()).apply();
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to cache the video codecs of " + key, e);
+        }
+    }
+}
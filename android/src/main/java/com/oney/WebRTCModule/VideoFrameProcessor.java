@@ -0,0 +1,42 @@
+package com.oney.WebRTCModule;
+
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.VideoFrame;
+
+/**
+ * A stage of the processing pipeline between a local video capturer and the
+ * {@code VideoSource} of a track (e.g. background blur, cropping,
+ * watermarking). Stages are registered by the application through
+ * {@link WebRTCModule.Options#addVideoFrameProcessorFactory} and are enabled
+ * per track by naming them in the {@code frameProcessors} video constraint.
+ *
+ * All methods are invoked on the capture thread on which the EGL context of
+ * the capturer's {@link SurfaceTextureHelper} is current so stages may work on
+ * texture frames directly, without round trips through I420.
+ */
+public interface VideoFrameProcessor {
+    /**
+     * Processes a frame.
+     *
+     * @param frame the frame to process. It is owned by the caller: a stage
+     * which passes it on unmodified has to retain it.
+     * @param textureHelper the {@code SurfaceTextureHelper} of the capturer.
+     * It may change (e.g. after the EGL context has been rebuilt) in which
+     * case GL resources created in the old context have to be recreated.
+     * @return the processed frame, which is released by the caller, or
+     * {@code null} to drop the frame
+     */
+    VideoFrame process(VideoFrame frame, SurfaceTextureHelper textureHelper);
+
+    /**
+     * Releases the resources of this stage. The stage is not used afterwards.
+     */
+    void release();
+
+    /**
+     * Creates a {@code VideoFrameProcessor} for each track which enables it.
+     */
+    interface Factory {
+        VideoFrameProcessor create();
+    }
+}
@@ -0,0 +1,190 @@
+package com.oney.WebRTCModule;
+
+import android.os.Handler;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoProcessor;
+import org.webrtc.VideoSink;
+
+/**
+ * Runs the {@link VideoFrameProcessor}s enabled for a local video track, in
+ * order, between the capturer and the {@code VideoSource} of the track. Set on
+ * the {@code VideoSource} with {@code setVideoProcessor} so frames arrive on
+ * the capture thread after the adaptation of the output format of the track.
+ * Measures the time spent in each stage.
+ */
+class VideoFrameProcessorChain implements VideoProcessor {
+    /**
+     * The {@link Log} tag with which {@code VideoFrameProcessorChain} is to
+     * log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * A {@link VideoFrameProcessor} and its timing. The timing is written on
+     * the capture thread and read on the executor; torn reads only affect
+     * statistics.
+     */
+    private static class Stage {
+        final String name;
+        final VideoFrameProcessor processor;
+        volatile long frames;
+        volatile long totalNs;
+        volatile long maxNs;
+        volatile long framesDropped;
+
+        Stage(String name, VideoFrameProcessor processor) {
+            this.name = name;
+            this.processor = processor;
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    /**
+     * Provides the {@link SurfaceTextureHelper} of the capturer, which may
+     * change over the lifetime of the track.
+     */
+    interface TextureHelperProvider {
+        SurfaceTextureHelper getSurfaceTextureHelper();
+    }
+
+    private final TextureHelperProvider textureHelperProvider;
+
+    private volatile VideoSink sink;
+
+    private volatile boolean released;
+
+    VideoFrameProcessorChain(TextureHelperProvider textureHelperProvider) {
+        this.textureHelperProvider = textureHelperProvider;
+    }
+
+    void addStage(String name, VideoFrameProcessor processor) {
+        stages.add(new Stage(name, processor));
+    }
+
+    boolean isEmpty() {
+        return stages.isEmpty();
+    }
+
+    @Override
+    public void setSink(VideoSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void onCapturerStarted(boolean success) {
+    }
+
+    @Override
+    public void onCapturerStopped() {
+    }
+
+    @Override
+    public void onFrameCaptured(VideoFrame frame) {
+        VideoSink sink = this.sink;
+
+        if (sink == null || released) {
+            return;
+        }
+
+        SurfaceTextureHelper textureHelper
+            = textureHelperProvider.getSurfaceTextureHelper();
+        VideoFrame current = frame;
+
+        current.retain();
+        for (Stage stage : stages) {
+            long startNs = System.nanoTime();
+            VideoFrame processed;
+
+            try {
+                processed = stage.processor.process(current, textureHelper);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Video frame processor " + stage.name + " failed", e);
+                processed = null;
+            }
+
+            long elapsedNs = System.nanoTime() - startNs;
+
+            stage.frames++;
+            stage.totalNs += elapsedNs;
+            if (elapsedNs > stage.maxNs) {
+                stage.maxNs = elapsedNs;
+            }
+
+            current.release();
+            if (processed == null) {
+                stage.framesDropped++;
+                return;
+            }
+            current = processed;
+        }
+
+        sink.onFrame(current);
+        current.release();
+    }
+
+    /**
+     * Gets the timing of the stages in the format of
+     * {@code mediaStreamTrackGetProcessorStats}.
+     */
+    WritableArray getStats() {
+        WritableArray array = Arguments.createArray();
+
+        for (Stage stage : stages) {
+            long frames = stage.frames;
+            WritableMap params = Arguments.createMap();
+
+            params.putString("name", stage.name);
+            params.putDouble("frames", frames);
+            params.putDouble("framesDropped", stage.framesDropped);
+            params.putDouble(
+                "averageProcessingTime",
+                frames > 0 ? stage.totalNs / 1e6 / frames : 0);
+            params.putDouble("maxProcessingTime", stage.maxNs / 1e6);
+            array.pushMap(params);
+        }
+
+        return array;
+    }
+
+    /**
+     * Releases the stages on the capture thread (where their GL resources
+     * live), or right away if there is no capture thread anymore. Blocks until
+     * they have been released because the capture thread may be quit right
+     * afterwards (i.e. when the camera is disposed of), dropping anything
+     * posted to it.
+     */
+    void release() {
+        released = true;
+
+        SurfaceTextureHelper textureHelper
+            = textureHelperProvider.getSurfaceTextureHelper();
+        Runnable releaseStages = () -> {
+            for (Stage stage : stages) {
+                try {
+                    stage.processor.release();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to release video frame processor " + stage.name, e);
+                }
+            }
+        };
+
+        if (textureHelper != null) {
+            Handler handler = textureHelper.getHandler();
+
+            org.webrtc.ThreadUtils.invokeAtFrontUninterruptibly(handler, releaseStages);
+        } else {
+            releaseStages.run();
+        }
+    }
+}
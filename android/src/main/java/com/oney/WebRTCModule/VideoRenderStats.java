@@ -0,0 +1,222 @@
+package com.oney.WebRTCModule;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.webrtc.RendererCommon.GlDrawer;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+
+/**
+ * Collects rendering metrics for a single video renderer: the rate at which
+ * frames are rendered, the number of frames which were delivered to the
+ * renderer but replaced by a newer frame before they could be drawn, the age
+ * of frames at the time they are drawn and the time it took for the first
+ * frame to be rendered after the renderer was attached.
+ *
+ * Frames are counted on their way into the renderer by the {@link VideoSink}
+ * returned by {@link #wrapSink(VideoSink)} and on their way onto the surface by
+ * the {@link GlDrawer} returned by {@link #wrapDrawer(GlDrawer)}. The latter is
+ * invoked by the renderer exactly once per drawn frame on its render thread.
+ */
+class VideoRenderStats {
+    private final AtomicInteger framesReceived = new AtomicInteger();
+    private final AtomicInteger framesRendered = new AtomicInteger();
+
+    /**
+     * The sum of the times (in nanoseconds) between the delivery of a frame to
+     * the renderer and its drawing for all frames counted in
+     * {@link #framesRendered} since the last report.
+     */
+    private final AtomicLong renderLatencySumNs = new AtomicLong();
+
+    /**
+     * The sum of the ages (in nanoseconds) of the frames counted in
+     * {@link #framesRendered} since the last report at the time they were
+     * drawn, as measured against their timestamps.
+     */
+    private final AtomicLong frameAgeSumNs = new AtomicLong();
+
+    /**
+     * The number of frames rendered since the last report.
+     */
+    private final AtomicInteger intervalFramesRendered = new AtomicInteger();
+
+    /**
+     * The {@link System#nanoTime()} at which the last frame was delivered to
+     * the renderer and its timestamp, respectively. The renderer always draws
+     * the most recently delivered frame.
+     */
+    private volatile long lastFrameDeliveredNs;
+    private volatile long lastFrameTimestampNs;
+
+    private volatile long attachedNs;
+    private volatile long timeToFirstFrameNs = -1;
+
+    private int lastReportFramesReceived;
+    private int lastReportFramesRendered;
+    private long lastReportNs;
+
+    /**
+     * Resets all metrics. Invoked when the renderer gets attached to a new
+     * video track.
+     */
+    void reset() {
+        framesReceived.set(0);
+        framesRendered.set(0);
+        renderLatencySumNs.set(0);
+        frameAgeSumNs.set(0);
+        intervalFramesRendered.set(0);
+        timeToFirstFrameNs = -1;
+        lastReportFramesReceived = 0;
+        lastReportFramesRendered = 0;
+        lastReportNs = attachedNs = System.nanoTime();
+    }
+
+    /**
+     * Records that the renderer has rendered its first frame since
+     * {@link #reset()}.
+     */
+    void onFirstFrameRendered() {
+        if (timeToFirstFrameNs < 0) {
+            timeToFirstFrameNs = System.nanoTime() - attachedNs;
+        }
+    }
+
+    /**
+     * Gets the time (in milliseconds) between the last {@link #reset()} and
+     * the rendering of the first frame or {@code -1} if no frame has been
+     * rendered yet.
+     */
+    long getTimeToFirstFrameMs() {
+        long ns = timeToFirstFrameNs;
+
+        return ns < 0 ? -1 : ns / 1000000;
+    }
+
+    /**
+     * Builds a report of the metrics collected since the last invocation of
+     * this method (or {@link #reset()}) and starts a new interval.
+     */
+    WritableMap report() {
+        long now = System.nanoTime();
+        int received = framesReceived.get();
+        int rendered = framesRendered.get();
+        int intervalReceived = received - lastReportFramesReceived;
+        int intervalRendered = rendered - lastReportFramesRendered;
+        int latencyFrames = intervalFramesRendered.getAndSet(0);
+        long latencySumNs = renderLatencySumNs.getAndSet(0);
+        long ageSumNs = frameAgeSumNs.getAndSet(0);
+        double intervalSeconds = (now - lastReportNs) / 1e9;
+
+        lastReportFramesReceived = received;
+        lastReportFramesRendered = rendered;
+        lastReportNs = now;
+
+        WritableMap params = Arguments.createMap();
+        params.putDouble(
+            "framesPerSecond",
+            intervalSeconds > 0 ? intervalRendered / intervalSeconds : 0);
+        params.putInt("framesReceived", received);
+        params.putInt("framesRendered", rendered);
+        params.putInt("framesDropped", Math.max(0, received - rendered));
+        params.putInt(
+            "framesDroppedInInterval",
+            Math.max(0, intervalReceived - intervalRendered));
+        params.putDouble(
+            "renderLatency",
+            latencyFrames > 0 ? latencySumNs / 1e6 / latencyFrames : 0);
+        params.putDouble(
+            "frameAge",
+            latencyFrames > 0 ? ageSumNs / 1e6 / latencyFrames : 0);
+        params.putDouble("timeToFirstFrame", getTimeToFirstFrameMs());
+
+        return params;
+    }
+
+    /**
+     * Wraps a specific {@link VideoSink} (i.e. renderer) in order to count the
+     * frames delivered to it.
+     */
+    VideoSink wrapSink(VideoSink sink) {
+        return frame -> {
+            lastFrameTimestampNs = frame.getTimestampNs();
+            lastFrameDeliveredNs = System.nanoTime();
+            framesReceived.incrementAndGet();
+            sink.onFrame(frame);
+        };
+    }
+
+    /**
+     * Wraps a specific {@link GlDrawer} in order to count the frames drawn by
+     * the renderer which uses it.
+     */
+    GlDrawer wrapDrawer(GlDrawer drawer) {
+        return new GlDrawer() {
+            @Override
+            public void drawOes(
+                    int oesTextureId, float[] texMatrix,
+                    int frameWidth, int frameHeight,
+                    int viewportX, int viewportY,
+                    int viewportWidth, int viewportHeight) {
+                drawer.drawOes(
+                    oesTextureId, texMatrix,
+                    frameWidth, frameHeight,
+                    viewportX, viewportY,
+                    viewportWidth, viewportHeight);
+                onFrameDrawn();
+            }
+
+            @Override
+            public void drawRgb(
+                    int textureId, float[] texMatrix,
+                    int frameWidth, int frameHeight,
+                    int viewportX, int viewportY,
+                    int viewportWidth, int viewportHeight) {
+                drawer.drawRgb(
+                    textureId, texMatrix,
+                    frameWidth, frameHeight,
+                    viewportX, viewportY,
+                    viewportWidth, viewportHeight);
+                onFrameDrawn();
+            }
+
+            @Override
+            public void drawYuv(
+                    int[] yuvTextures, float[] texMatrix,
+                    int frameWidth, int frameHeight,
+                    int viewportX, int viewportY,
+                    int viewportWidth, int viewportHeight) {
+                drawer.drawYuv(
+                    yuvTextures, texMatrix,
+                    frameWidth, frameHeight,
+                    viewportX, viewportY,
+                    viewportWidth, viewportHeight);
+                onFrameDrawn();
+            }
+
+            @Override
+            public void release() {
+                drawer.release();
+            }
+        };
+    }
+
+    /**
+     * Invoked on the render thread after a frame has been drawn.
+     */
+    private void onFrameDrawn() {
+        long now = System.nanoTime();
+
+        framesRendered.incrementAndGet();
+        intervalFramesRendered.incrementAndGet();
+        renderLatencySumNs.addAndGet(now - lastFrameDeliveredNs);
+        // Frame timestamps are produced in the same (monotonic) time base as
+        // System.nanoTime() but remote frames may carry a render time in the
+        // (near) future.
+        frameAgeSumNs.addAndGet(Math.max(0, now - lastFrameTimestampNs));
+    }
+}
@@ -24,7 +24,12 @@ public class VideoTrackAdapter {
 
     private Map<String, TrackMuteUnmuteImpl> muteImplMap = new HashMap<>();
 
-    private Timer timer = new Timer("VideoTrackMutedTimer");
+    /**
+     * The timer which drives the mute detection of all remote tracks, video
+     * and audio (see {@link AudioTrackAdapter}), of all
+     * {@code PeerConnection}s.
+     */
+    static final Timer timer = new Timer("TrackMutedTimer", true);
 
     private final int peerConnectionId;
 
@@ -0,0 +1,340 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import com.facebook.react.bridge.Callback;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.webrtc.EglBase;
+import org.webrtc.GlRectDrawer;
+import org.webrtc.GlTextureFrameBuffer;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoFrameDrawer;
+import org.webrtc.VideoSink;
+import org.webrtc.VideoTrack;
+
+/**
+ * Takes snapshots of the frames of {@link VideoTrack}s. A temporary
+ * {@link VideoSink} grabs the next frame of the track, the frame is downscaled
+ * and read back on a dedicated GL thread (which shares the root EGL context)
+ * and is then encoded into a file on a background thread. Neither the
+ * JavaScript thread nor the main thread are involved.
+ */
+class VideoTrackSnapshotter {
+    /**
+     * The {@link Log} tag with which {@code VideoTrackSnapshotter} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The time in milliseconds to wait for a frame before giving up.
+     */
+    private static final long FRAME_TIMEOUT_MS = 3000;
+
+    /**
+     * The quality with which lossy formats are encoded.
+     */
+    private static final int QUALITY = 90;
+
+    private final Context context;
+
+    /**
+     * The {@code ExecutorService} on which snapshots are encoded.
+     */
+    private final ExecutorService encodeExecutor
+        = Executors.newSingleThreadExecutor();
+
+    /**
+     * The GL thread and the GL resources which live on it. Lazily
+     * initialized and released when the root EGL context gets rebuilt.
+     */
+    private Handler glHandler;
+    private EglBase eglBase;
+    private GlRectDrawer drawer;
+    private VideoFrameDrawer frameDrawer;
+    private GlTextureFrameBuffer frameBuffer;
+    private final Matrix drawMatrix = new Matrix();
+
+    /**
+     * Releases the GL resources (which live in the old root EGL context)
+     * after {@link EglUtils} has rebuilt the root EGL context.
+     */
+    private final EglUtils.RootEglContextListener rootEglContextListener
+        = eglContext -> {
+            Handler handler = getGlHandler();
+            handler.post(this::releaseGl);
+        };
+
+    VideoTrackSnapshotter(Context context) {
+        this.context = context;
+
+        EglUtils.addRootEglContextListener(rootEglContextListener);
+    }
+
+    /**
+     * Stops listening to the root EGL context and releases the GL resources
+     * and thread. Invoked when the module is torn down.
+     */
+    void dispose() {
+        EglUtils.removeRootEglContextListener(rootEglContextListener);
+
+        Handler handler;
+
+        synchronized (this) {
+            handler = glHandler;
+            glHandler = null;
+        }
+        if (handler != null) {
+            handler.post(() -> {
+                releaseGl();
+                handler.getLooper().quit();
+            });
+        }
+    }
+
+    /**
+     * Takes a snapshot of the next frame of a specific {@link VideoTrack}.
+     *
+     * @param videoTrack the {@code VideoTrack} to take a snapshot of
+     * @param maxWidth the maximum width of the snapshot or zero for the width
+     * of the frame. The aspect ratio of the frame is preserved.
+     * @param format the format of the snapshot i.e. {@code jpeg},
+     * {@code webp} or {@code png}
+     * @param callback invoked with {@code true} and the path of the snapshot
+     * file on success or {@code false} and an error message on failure
+     */
+    void captureFrame(
+            VideoTrack videoTrack,
+            int maxWidth,
+            String format,
+            Callback callback) {
+        Bitmap.CompressFormat compressFormat = getCompressFormat(format);
+
+        if (compressFormat == null) {
+            callback.invoke(false, "Unsupported format: " + format);
+            return;
+        }
+        if (EglUtils.getRootEglBaseContext() == null) {
+            callback.invoke(false, "EGL is not available");
+            return;
+        }
+
+        Handler handler = getGlHandler();
+        AtomicBoolean done = new AtomicBoolean();
+        VideoSink sink = new VideoSink() {
+            @Override
+            public void onFrame(VideoFrame frame) {
+                if (!done.compareAndSet(false, true)) {
+                    return;
+                }
+                frame.retain();
+                handler.post(() ->
+                    renderFrame(frame, maxWidth, compressFormat, callback));
+                removeSink(videoTrack, this);
+            }
+        };
+
+        handler.postDelayed(() -> {
+            if (done.compareAndSet(false, true)) {
+                removeSink(videoTrack, sink);
+                callback.invoke(false, "Timed out waiting for a frame");
+            }
+        }, FRAME_TIMEOUT_MS);
+
+        videoTrack.addSink(sink);
+    }
+
+    private static Bitmap.CompressFormat getCompressFormat(String format) {
+        if (format == null) {
+            return Bitmap.CompressFormat.JPEG;
+        }
+        switch (format) {
+        case "jpeg":
+        case "jpg":
+            return Bitmap.CompressFormat.JPEG;
+        case "png":
+            return Bitmap.CompressFormat.PNG;
+        case "webp":
+            return Bitmap.CompressFormat.WEBP;
+        }
+        return null;
+    }
+
+    private synchronized Handler getGlHandler() {
+        if (glHandler == null) {
+            HandlerThread thread = new HandlerThread("SnapshotThread");
+            thread.start();
+            glHandler = new Handler(thread.getLooper());
+        }
+        return glHandler;
+    }
+
+    /**
+     * Removes a specific {@link VideoSink} from a specific {@link VideoTrack}.
+     * Must not be done on the thread which delivers the frames to the sink.
+     */
+    private static void removeSink(VideoTrack videoTrack, VideoSink sink) {
+        ThreadUtils.runOnExecutor(() -> {
+            try {
+                videoTrack.removeSink(sink);
+            } catch (Throwable tr) {
+                // The track may have been released in the meantime.
+                Log.w(TAG, "Failed to remove snapshot sink", tr);
+            }
+        });
+    }
+
+    /**
+     * Downscales and reads back a specific frame. Runs on the GL thread.
+     */
+    private void renderFrame(
+            VideoFrame frame,
+            int maxWidth,
+            Bitmap.CompressFormat compressFormat,
+            Callback callback) {
+        ByteBuffer pixels;
+        int width = frame.getRotatedWidth();
+        int height = frame.getRotatedHeight();
+
+        try {
+            if (maxWidth > 0 && width > maxWidth) {
+                height = Math.max(1, Math.round(height * maxWidth / (float) width));
+                width = maxWidth;
+            }
+
+            initGl();
+
+            // Flip vertically because glReadPixels reads bottom-up.
+            drawMatrix.reset();
+            drawMatrix.preTranslate(0.5f, 0.5f);
+            drawMatrix.preScale(1f, -1f);
+            drawMatrix.preTranslate(-0.5f, -0.5f);
+
+            frameBuffer.setSize(width, height);
+            GLES20.glBindFramebuffer(
+                GLES20.GL_FRAMEBUFFER, frameBuffer.getFrameBufferId());
+            frameDrawer.drawFrame(
+                frame, drawer, drawMatrix, 0, 0, width, height);
+
+            pixels = ByteBuffer.allocateDirect(width * height * 4);
+            GLES20.glReadPixels(
+                0, 0, width, height,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE,
+                pixels);
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        } catch (RuntimeException ex) {
+            Log.e(TAG, "Failed to render snapshot", ex);
+            callback.invoke(false, "Failed to render frame: " + ex.getMessage());
+            releaseGl();
+            return;
+        } finally {
+            frame.release();
+        }
+
+        int bitmapWidth = width;
+        int bitmapHeight = height;
+
+        encodeExecutor.execute(() ->
+            encode(pixels, bitmapWidth, bitmapHeight, compressFormat, callback));
+    }
+
+    /**
+     * Encodes RGBA pixels into a file in the cache directory of the
+     * application. Runs on {@link #encodeExecutor}.
+     */
+    private void encode(
+            ByteBuffer pixels,
+            int width,
+            int height,
+            Bitmap.CompressFormat compressFormat,
+            Callback callback) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+
+        bitmap.copyPixelsFromBuffer(pixels);
+
+        try {
+            File file
+                = File.createTempFile(
+                    "frame-",
+                    "." + compressFormat.name().toLowerCase(),
+                    context.getCacheDir());
+
+            try (OutputStream os = new FileOutputStream(file)) {
+                bitmap.compress(compressFormat, QUALITY, os);
+            }
+            callback.invoke(true, file.getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write snapshot", e);
+            callback.invoke(false, "Failed to write snapshot: " + e.getMessage());
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Initializes the GL resources if necessary. Runs on the GL thread.
+     */
+    private void initGl() {
+        if (eglBase != null) {
+            return;
+        }
+
+        EglBase.Context sharedContext = EglUtils.getRootEglBaseContext();
+
+        if (sharedContext == null) {
+            throw new RuntimeException("EGL is not available");
+        }
+
+        eglBase = EglBase.create(sharedContext, EglBase.CONFIG_PIXEL_BUFFER);
+        eglBase.createDummyPbufferSurface();
+        eglBase.makeCurrent();
+
+        drawer = new GlRectDrawer();
+        frameDrawer = new VideoFrameDrawer();
+        frameBuffer = new GlTextureFrameBuffer(GLES20.GL_RGBA);
+    }
+
+    /**
+     * Releases the GL resources, if any. Runs on the GL thread.
+     */
+    private void releaseGl() {
+        if (eglBase == null) {
+            return;
+        }
+
+        try {
+            if (frameBuffer != null) {
+                frameBuffer.release();
+            }
+            if (frameDrawer != null) {
+                frameDrawer.release();
+            }
+            if (drawer != null) {
+                drawer.release();
+            }
+        } catch (RuntimeException ex) {
+            // The context may have been lost already.
+            Log.w(TAG, "Failed to release snapshot GL resources", ex);
+        }
+        eglBase.release();
+
+        eglBase = null;
+        drawer = null;
+        frameDrawer = null;
+        frameBuffer = null;
+    }
+}
@@ -0,0 +1,576 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.graphics.Matrix;
+import android.graphics.Point;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.webrtc.EglBase;
+import org.webrtc.GlRectDrawer;
+import org.webrtc.MediaStream;
+import org.webrtc.MediaStreamTrack;
+import org.webrtc.RendererCommon;
+import org.webrtc.RendererCommon.ScalingType;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoFrameDrawer;
+import org.webrtc.VideoSink;
+import org.webrtc.VideoTrack;
+
+/**
+ * Renders multiple video tracks into a single surface. Each tile of the layout
+ * specifies a {@code MediaStream} (by its {@code streamURL}) or a
+ * {@code VideoTrack} (by its {@code trackId}) and a rectangle in coordinates
+ * normalized to the size of the view. All tiles are drawn in one GL pass on a
+ * single render thread so, unlike a {@link WebRTCView} per tile, the cost of
+ * an additional tile is one texture upload and one draw call rather than one
+ * surface, EGL context and render thread.
+ */
+public class WebRTCCompositorView extends SurfaceView
+    implements SurfaceHolder.Callback {
+
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The position, size and scaling of a {@link Tile} in coordinates
+     * normalized to the size of the view. Immutable so that the render thread
+     * never sees a partially updated layout.
+     */
+    private static class TileLayout {
+        final float x;
+        final float y;
+        final float width;
+        final float height;
+        final boolean mirror;
+        final ScalingType scalingType;
+
+        TileLayout(
+                float x,
+                float y,
+                float width,
+                float height,
+                boolean mirror,
+                ScalingType scalingType) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.mirror = mirror;
+            this.scalingType = scalingType;
+        }
+    }
+
+    /**
+     * A single rectangle of the layout of a {@code WebRTCCompositorView} and
+     * the video track rendered into it.
+     */
+    private class Tile implements VideoSink {
+        final String streamURL;
+        final String trackId;
+
+        /**
+         * Replaced on the UI thread (rather than mutated) and read by the
+         * render thread.
+         */
+        volatile TileLayout layout;
+
+        VideoTrack videoTrack;
+
+        /**
+         * The most recent frame delivered to this {@code Tile} (and retained
+         * by it). Synchronized by this {@code Tile}.
+         */
+        private VideoFrame frame;
+
+        Tile(String streamURL, String trackId) {
+            this.streamURL = streamURL;
+            this.trackId = trackId;
+        }
+
+        boolean hasSource(String streamURL, String trackId) {
+            return Objects.equals(this.streamURL, streamURL)
+                && Objects.equals(this.trackId, trackId);
+        }
+
+        @Override
+        public void onFrame(VideoFrame frame) {
+            frame.retain();
+            synchronized (this) {
+                if (this.frame != null) {
+                    this.frame.release();
+                }
+                this.frame = frame;
+            }
+            requestRender();
+        }
+
+        /**
+         * Gets the most recent frame of this {@code Tile}, retained on behalf
+         * of the caller, or {@code null}.
+         */
+        synchronized VideoFrame acquireFrame() {
+            if (frame != null) {
+                frame.retain();
+            }
+            return frame;
+        }
+
+        synchronized void releaseFrame() {
+            if (frame != null) {
+                frame.release();
+                frame = null;
+            }
+        }
+    }
+
+    /**
+     * The tiles of the current layout. Modified on the UI thread only and
+     * replaced (rather than mutated) so that the render thread may iterate
+     * over a snapshot.
+     */
+    private volatile List<Tile> tiles = new ArrayList<>();
+
+    /**
+     * The render thread and the GL resources which live on it.
+     */
+    private Handler renderHandler;
+    private EglBase eglBase;
+    private GlRectDrawer drawer;
+    private VideoFrameDrawer frameDrawer;
+    private final Matrix drawMatrix = new Matrix();
+
+    private final EglUtils.RootEglContextListener rootEglContextListener
+        = eglContext -> {
+            Handler handler = renderHandler;
+
+            if (handler != null) {
+                handler.post(this::reinitEgl);
+            }
+        };
+
+    /**
+     * The surface which the render thread is to draw into, if any.
+     */
+    private volatile SurfaceHolder surfaceHolder;
+
+    /**
+     * Coalesces the render requests of the tiles so that at most one render
+     * pass is pending at any time regardless of the number of tiles.
+     */
+    private final AtomicBoolean renderPending = new AtomicBoolean();
+
+    public WebRTCCompositorView(Context context) {
+        super(context);
+
+        getHolder().addCallback(this);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        HandlerThread renderThread
+            = new HandlerThread("CompositorRenderThread");
+        renderThread.start();
+        renderHandler = new Handler(renderThread.getLooper());
+        renderHandler.post(this::initEgl);
+
+        EglUtils.addRootEglContextListener(rootEglContextListener);
+
+        for (Tile tile : tiles) {
+            attachTile(tile);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        for (Tile tile : tiles) {
+            detachTile(tile);
+        }
+
+        EglUtils.removeRootEglContextListener(rootEglContextListener);
+
+        Handler handler = renderHandler;
+
+        // The surface is destroyed by super.onDetachedFromWindow() and
+        // surfaceDestroyed will not find the render thread anymore.
+        surfaceHolder = null;
+        releaseEglSurface(handler);
+        renderHandler = null;
+        handler.post(() -> {
+            releaseEgl();
+            handler.getLooper().quit();
+        });
+
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * Sets the layout of this {@code WebRTCCompositorView}. Tiles which keep
+     * their source across layouts keep their sink (and last frame) so that
+     * moving or resizing them does not cause flicker.
+     *
+     * @param layout an array of dictionaries with the keys {@code streamURL}
+     * or {@code trackId}, {@code x}, {@code y}, {@code width}, {@code height}
+     * (normalized to {@code [0, 1]}), {@code mirror} and {@code objectFit}
+     */
+    void setLayout(ReadableArray layout) {
+        List<Tile> oldTiles = tiles;
+        List<Tile> newTiles = new ArrayList<>();
+
+        for (int i = 0, size = layout == null ? 0 : layout.size();
+                i < size;
+                i++) {
+            ReadableMap spec = layout.getMap(i);
+            String streamURL = getString(spec, "streamURL");
+            String trackId = getString(spec, "trackId");
+
+            if (streamURL == null && trackId == null) {
+                Log.w(TAG, "Ignoring compositor tile without a source");
+                continue;
+            }
+
+            Tile tile = null;
+
+            for (Tile oldTile : oldTiles) {
+                if (oldTile.hasSource(streamURL, trackId)
+                        && !newTiles.contains(oldTile)) {
+                    tile = oldTile;
+                    break;
+                }
+            }
+            if (tile == null) {
+                tile = new Tile(streamURL, trackId);
+            }
+
+            tile.layout
+                = new TileLayout(
+                    (float) getDouble(spec, "x", 0),
+                    (float) getDouble(spec, "y", 0),
+                    (float) getDouble(spec, "width", 1),
+                    (float) getDouble(spec, "height", 1),
+                    spec.hasKey("mirror") && spec.getBoolean("mirror"),
+                    "cover".equals(getString(spec, "objectFit"))
+                        ? ScalingType.SCALE_ASPECT_FILL
+                        : ScalingType.SCALE_ASPECT_FIT);
+            newTiles.add(tile);
+        }
+
+        tiles = newTiles;
+
+        boolean attached = renderHandler != null;
+
+        for (Tile tile : oldTiles) {
+            if (!newTiles.contains(tile)) {
+                detachTile(tile);
+            }
+        }
+        if (attached) {
+            for (Tile tile : newTiles) {
+                attachTile(tile);
+            }
+        }
+
+        requestRender();
+    }
+
+    private static String getString(ReadableMap map, String key) {
+        return map.hasKey(key) && !map.isNull(key) ? map.getString(key) : null;
+    }
+
+    private static double getDouble(ReadableMap map, String key, double def) {
+        return map.hasKey(key) && !map.isNull(key) ? map.getDouble(key) : def;
+    }
+
+    /**
+     * Resolves the source of a specific {@link Tile} to a {@link VideoTrack}.
+     */
+    private VideoTrack getVideoTrack(Tile tile) {
+        ReactContext reactContext = (ReactContext) getContext();
+        WebRTCModule module = reactContext.getNativeModule(WebRTCModule.class);
+
+        if (tile.trackId != null) {
+            MediaStreamTrack track = module.getTrack(tile.trackId);
+
+            return track instanceof VideoTrack ? (VideoTrack) track : null;
+        }
+
+        MediaStream stream = module.getStreamForReactTag(tile.streamURL);
+
+        if (stream != null && !stream.videoTracks.isEmpty()) {
+            return stream.videoTracks.get(0);
+        }
+        return null;
+    }
+
+    private void attachTile(Tile tile) {
+        VideoTrack videoTrack = getVideoTrack(tile);
+
+        if (tile.videoTrack != videoTrack) {
+            detachTile(tile);
+            if (videoTrack != null) {
+                try {
+                    videoTrack.addSink(tile);
+                    tile.videoTrack = videoTrack;
+                } catch (Throwable tr) {
+                    Log.e(TAG, "Failed to add compositor tile sink", tr);
+                }
+            }
+        }
+    }
+
+    private void detachTile(Tile tile) {
+        VideoTrack videoTrack = tile.videoTrack;
+
+        if (videoTrack != null) {
+            tile.videoTrack = null;
+            // XXX As in WebRTCView, the track may have been disposed already
+            // by WebRTCModule#mediaStreamTrackRelease in which case it must
+            // not be touched.
+            if (videoTrack == getVideoTrack(tile)) {
+                try {
+                    videoTrack.removeSink(tile);
+                } catch (Throwable tr) {
+                    Log.e(TAG, "Failed to remove compositor tile sink", tr);
+                }
+            }
+        }
+        tile.releaseFrame();
+        requestRender();
+    }
+
+    private void requestRender() {
+        Handler handler = renderHandler;
+
+        if (handler != null && renderPending.compareAndSet(false, true)) {
+            handler.post(this::render);
+        }
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        surfaceHolder = holder;
+
+        Handler handler = renderHandler;
+
+        if (handler != null) {
+            handler.post(this::createEglSurface);
+        }
+    }
+
+    @Override
+    public void surfaceChanged(
+            SurfaceHolder holder,
+            int format,
+            int width,
+            int height) {
+        requestRender();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        surfaceHolder = null;
+
+        Handler handler = renderHandler;
+
+        if (handler != null) {
+            releaseEglSurface(handler);
+        }
+    }
+
+    /**
+     * Releases the EGL surface on the render thread and waits for it so that
+     * the surface is not used once this method returns.
+     */
+    private void releaseEglSurface(Handler handler) {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        handler.post(() -> {
+            if (eglBase != null) {
+                eglBase.detachCurrent();
+                eglBase.releaseSurface();
+            }
+            latch.countDown();
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Initializes the GL resources of this view. Runs on the render thread.
+     */
+    private void initEgl() {
+        EglBase.Context sharedContext = EglUtils.getRootEglBaseContext();
+
+        if (sharedContext == null) {
+            Log.e(TAG, "Failed to render compositor view: no EGL context");
+            return;
+        }
+        try {
+            eglBase = EglBase.create(sharedContext, EglBase.CONFIG_PLAIN);
+            drawer = new GlRectDrawer();
+            frameDrawer = new VideoFrameDrawer();
+        } catch (RuntimeException ex) {
+            Log.e(TAG, "Failed to initialize compositor view", ex);
+            releaseEgl();
+            return;
+        }
+        createEglSurface();
+    }
+
+    private void createEglSurface() {
+        SurfaceHolder holder = surfaceHolder;
+
+        if (eglBase == null || eglBase.hasSurface() || holder == null) {
+            return;
+        }
+        try {
+            eglBase.createSurface(holder.getSurface());
+            eglBase.makeCurrent();
+        } catch (RuntimeException ex) {
+            Log.e(TAG, "Failed to create compositor surface", ex);
+            return;
+        }
+        render();
+    }
+
+    /**
+     * Releases the GL resources of this view, if any. Runs on the render
+     * thread.
+     */
+    private void releaseEgl() {
+        try {
+            if (drawer != null) {
+                drawer.release();
+            }
+            if (frameDrawer != null) {
+                frameDrawer.release();
+            }
+        } catch (RuntimeException ex) {
+            // The context may have been lost already.
+            Log.w(TAG, "Failed to release compositor GL resources", ex);
+        }
+        if (eglBase != null) {
+            eglBase.release();
+        }
+        drawer = null;
+        frameDrawer = null;
+        eglBase = null;
+    }
+
+    /**
+     * Moves on to a (rebuilt) root EGL context. Runs on the render thread.
+     */
+    private void reinitEgl() {
+        releaseEgl();
+        initEgl();
+    }
+
+    /**
+     * Draws the most recent frames of all tiles in one pass. Runs on the
+     * render thread.
+     */
+    private void render() {
+        renderPending.set(false);
+
+        if (eglBase == null || !eglBase.hasSurface()) {
+            return;
+        }
+
+        int surfaceWidth = eglBase.surfaceWidth();
+        int surfaceHeight = eglBase.surfaceHeight();
+
+        try {
+            eglBase.makeCurrent();
+            GLES20.glClearColor(0, 0, 0, 0);
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+            for (Tile tile : tiles) {
+                VideoFrame frame = tile.acquireFrame();
+
+                if (frame != null) {
+                    try {
+                        drawTile(tile.layout, frame, surfaceWidth, surfaceHeight);
+                    } finally {
+                        frame.release();
+                    }
+                }
+            }
+
+            eglBase.swapBuffers();
+        } catch (RuntimeException ex) {
+            Log.e(TAG, "Failed to render compositor view", ex);
+        }
+    }
+
+    private void drawTile(
+            TileLayout layout,
+            VideoFrame frame,
+            int surfaceWidth,
+            int surfaceHeight) {
+        int tileWidth = Math.round(layout.width * surfaceWidth);
+        int tileHeight = Math.round(layout.height * surfaceHeight);
+
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            return;
+        }
+
+        float frameAspectRatio
+            = frame.getRotatedWidth() / (float) frame.getRotatedHeight();
+        int viewportWidth = tileWidth;
+        int viewportHeight = tileHeight;
+
+        if (layout.scalingType == ScalingType.SCALE_ASPECT_FIT) {
+            Point size
+                = RendererCommon.getDisplaySize(
+                    ScalingType.SCALE_ASPECT_FIT,
+                    frameAspectRatio,
+                    tileWidth,
+                    tileHeight);
+
+            viewportWidth = size.x;
+            viewportHeight = size.y;
+        }
+
+        // GL's origin is the bottom left corner whereas the layout's is the
+        // top left one.
+        int viewportX
+            = Math.round(layout.x * surfaceWidth)
+                + (tileWidth - viewportWidth) / 2;
+        int viewportY
+            = surfaceHeight
+                - Math.round((layout.y + layout.height) * surfaceHeight)
+                + (tileHeight - viewportHeight) / 2;
+
+        // Crops (if the frame is to cover the tile) and mirrors the frame in
+        // the fashion of EglRenderer.
+        drawMatrix.set(
+            RendererCommon.convertMatrixToAndroidGraphicsMatrix(
+                RendererCommon.getLayoutMatrix(
+                    layout.mirror,
+                    frameAspectRatio,
+                    viewportWidth / (float) viewportHeight)));
+        frameDrawer.drawFrame(
+            frame,
+            drawer,
+            drawMatrix,
+            viewportX, viewportY, viewportWidth, viewportHeight);
+    }
+}
@@ -1,6 +1,7 @@
 package com.oney.WebRTCModule;
 
 import androidx.annotation.Nullable;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.SparseArray;
 
@@ -13,6 +14,7 @@ import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableMapKeySetIterator;
 import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.module.annotations.ReactModule;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
@@ -40,17 +42,113 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
      */
     private GetUserMediaImpl getUserMediaImpl;
 
+    /**
+     * Takes snapshots of the frames of video tracks on behalf of
+     * {@link #captureFrame}.
+     */
+    private VideoTrackSnapshotter videoTrackSnapshotter;
+
+    /**
+     * The {@link VideoFrameProcessor.Factory}s registered through
+     * {@link Options#addVideoFrameProcessorFactory} by name.
+     */
+    private final Map<String, VideoFrameProcessor.Factory> videoFrameProcessorFactories
+        = new HashMap<>();
+
+    /**
+     * The {@link AudioDeviceOptions} the {@code AudioDeviceModule} was built
+     * with ({@code null} for the defaults) and whether the application
+     * provided its own {@code AudioDeviceModule} instead.
+     */
+    private AudioDeviceOptions audioDeviceOptions;
+    private boolean customAudioDeviceModule;
+
+    /**
+     * Meters the audio levels of the local and remote audio tracks on behalf
+     * of {@link #startAudioLevelMonitor}.
+     */
+    private AudioLevelMonitor audioLevelMonitor;
+
+    /**
+     * Whether the video stack is disabled altogether. Set through
+     * {@link Options#setAudioOnly}.
+     */
+    private boolean audioOnly;
+
+    /**
+     * The video encoder / decoder factories the {@code PeerConnectionFactory}
+     * was built with ({@code null} in audio-only mode). Kept for
+     * {@link #prewarm}.
+     */
+    private VideoEncoderFactory videoEncoderFactory;
+    private VideoDecoderFactory videoDecoderFactory;
+
+    /**
+     * The time (in {@link SystemClock#elapsedRealtime()} milliseconds) at
+     * which this {@code WebRTCModule} was constructed and the durations of the
+     * phases of {@link #initAsync} reported by {@link #prewarm}.
+     */
+    private final long constructedTime;
+    private long initQueuedDuration;
+    private long nativeLibraryLoadDuration;
+    private long initializeDuration;
+    private long audioDeviceModuleDuration;
+    private long peerConnectionFactoryDuration;
+
     public static class Options {
         private VideoEncoderFactory videoEncoderFactory = null;
         private VideoDecoderFactory videoDecoderFactory = null;
         private AudioDeviceModule audioDeviceModule = null;
+        private AudioDeviceOptions audioDeviceOptions = null;
+        private boolean audioOnly = false;
+        private CodecPolicy codecPolicy = null;
+        private final Map<String, VideoFrameProcessor.Factory> videoFrameProcessorFactories
+            = new HashMap<>();
 
         public Options() {}
 
+        /**
+         * Registers a {@link VideoFrameProcessor} which local video tracks may
+         * enable by naming it in their {@code frameProcessors} video
+         * constraint.
+         */
+        public void addVideoFrameProcessorFactory(
+                String name,
+                VideoFrameProcessor.Factory factory) {
+            videoFrameProcessorFactories.put(name, factory);
+        }
+
+        /**
+         * Sets whether the video stack (the root EGL context, the video
+         * encoder / decoder factories and the camera enumerator) is to be
+         * left out altogether. Video capture is not supported and video is
+         * not negotiated in audio-only mode.
+         */
+        public void setAudioOnly(boolean audioOnly) {
+            this.audioOnly = audioOnly;
+        }
+
+        /**
+         * Sets the {@link CodecPolicy} of the default video encoder / decoder
+         * factories i.e. unless both a {@code VideoEncoderFactory} and a
+         * {@code VideoDecoderFactory} are set.
+         */
+        public void setCodecPolicy(CodecPolicy codecPolicy) {
+            this.codecPolicy = codecPolicy;
+        }
+
         public void setAudioDeviceModule(AudioDeviceModule audioDeviceModule) {
             this.audioDeviceModule = audioDeviceModule;
         }
 
+        /**
+         * Sets the options of the {@code JavaAudioDeviceModule} to be built
+         * unless an {@code AudioDeviceModule} is set.
+         */
+        public void setAudioDeviceOptions(AudioDeviceOptions audioDeviceOptions) {
+            this.audioDeviceOptions = audioDeviceOptions;
+        }
+
         public void setVideoDecoderFactory(VideoDecoderFactory videoDecoderFactory) {
             this.videoDecoderFactory = videoDecoderFactory;
         }
@@ -67,9 +165,14 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public WebRTCModule(ReactApplicationContext reactContext, Options options) {
         super(reactContext);
 
+        constructedTime = SystemClock.elapsedRealtime();
         mPeerConnectionObservers = new SparseArray<>();
         localStreams = new HashMap<>();
 
+        if (options != null) {
+            videoFrameProcessorFactories.putAll(options.videoFrameProcessorFactories);
+        }
+
         ThreadUtils.runOnExecutor(() -> initAsync(options));
     }
 
@@ -78,50 +181,91 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
      */
     private void initAsync(Options options) {
         ReactApplicationContext reactContext = getReactApplicationContext();
+        long time = SystemClock.elapsedRealtime();
+
+        initQueuedDuration = time - constructedTime;
 
         PeerConnectionFactory.initialize(
             PeerConnectionFactory.InitializationOptions.builder(reactContext)
+                .setNativeLibraryLoader(name -> {
+                    // Like the default loader but timed.
+                    long loadTime = SystemClock.elapsedRealtime();
+
+                    try {
+                        System.loadLibrary(name);
+                        return true;
+                    } catch (UnsatisfiedLinkError e) {
+                        Log.e(TAG, "Failed to load native library: " + name, e);
+                        return false;
+                    } finally {
+                        nativeLibraryLoadDuration
+                            = SystemClock.elapsedRealtime() - loadTime;
+                    }
+                })
                 .createInitializationOptions());
+        initializeDuration
+            = SystemClock.elapsedRealtime() - time - nativeLibraryLoadDuration;
 
         AudioDeviceModule adm = null;
         VideoEncoderFactory encoderFactory = null;
         VideoDecoderFactory decoderFactory = null;
+        CodecPolicy codecPolicy = null;
 
         if (options != null) {
             adm = options.audioDeviceModule;
+            audioDeviceOptions = options.audioDeviceOptions;
+            audioOnly = options.audioOnly;
+            codecPolicy = options.codecPolicy;
             encoderFactory = options.videoEncoderFactory;
             decoderFactory = options.videoDecoderFactory;
         }
 
-        if (encoderFactory == null || decoderFactory == null) {
-            // Initialize EGL context required for HW acceleration.
-            EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
-
-            if (eglContext != null) {
-                encoderFactory
-                    = new DefaultVideoEncoderFactory(
-                    eglContext,
-                    /* enableIntelVp8Encoder */ true,
-                    /* enableH264HighProfile */ false);
-                decoderFactory = new DefaultVideoDecoderFactory(eglContext);
-            } else {
-                encoderFactory = new SoftwareVideoEncoderFactory();
-                decoderFactory = new SoftwareVideoDecoderFactory();
+        if (audioOnly) {
+            Log.d(TAG, "Audio-only mode, the video stack is disabled.");
+            encoderFactory = null;
+            decoderFactory = null;
+        } else if (encoderFactory == null || decoderFactory == null) {
+            // The EGL context required for HW acceleration is created when the
+            // first video encoder / decoder is.
+            VideoCodecCache codecCache = new VideoCodecCache(reactContext);
+
+            if (codecPolicy == null) {
+                codecPolicy = new CodecPolicy();
             }
+            encoderFactory = new LazyVideoEncoderFactory(codecCache, codecPolicy);
+            decoderFactory = new LazyVideoDecoderFactory(codecCache, codecPolicy);
         }
 
-        if (adm == null) {
-            adm = JavaAudioDeviceModule.builder(reactContext).createAudioDeviceModule();
+        videoEncoderFactory = encoderFactory;
+        videoDecoderFactory = decoderFactory;
+        audioLevelMonitor = new AudioLevelMonitor(this);
+
+        time = SystemClock.elapsedRealtime();
+        if (adm != null) {
+            customAudioDeviceModule = true;
+        } else if (audioDeviceOptions != null) {
+            adm
+                = audioDeviceOptions.createAudioDeviceModule(
+                    reactContext, audioLevelMonitor);
+        } else {
+            adm
+                = JavaAudioDeviceModule.builder(reactContext)
+                    .setSamplesReadyCallback(audioLevelMonitor)
+                    .createAudioDeviceModule();
         }
+        audioDeviceModuleDuration = SystemClock.elapsedRealtime() - time;
 
+        time = SystemClock.elapsedRealtime();
         mFactory
             = PeerConnectionFactory.builder()
                 .setAudioDeviceModule(adm)
                 .setVideoEncoderFactory(encoderFactory)
                 .setVideoDecoderFactory(decoderFactory)
                 .createPeerConnectionFactory();
+        peerConnectionFactoryDuration = SystemClock.elapsedRealtime() - time;
 
         getUserMediaImpl = new GetUserMediaImpl(this, reactContext);
+        videoTrackSnapshotter = new VideoTrackSnapshotter(reactContext);
     }
 
     @Override
@@ -129,6 +273,29 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return "WebRTCModule";
     }
 
+    @Override
+    public void onCatalystInstanceDestroy() {
+        super.onCatalystInstanceDestroy();
+
+        // Runs after initAsync.
+        ThreadUtils.runOnExecutor(() -> {
+            if (getUserMediaImpl != null) {
+                getUserMediaImpl.dispose();
+            }
+            if (videoTrackSnapshotter != null) {
+                videoTrackSnapshotter.dispose();
+            }
+        });
+    }
+
+    /**
+     * Determines whether the video stack is disabled i.e. whether
+     * {@link Options#setAudioOnly} was set.
+     */
+    boolean isAudioOnly() {
+        return audioOnly;
+    }
+
     private PeerConnection getPeerConnection(int id) {
         PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
         return (pco == null) ? null : pco.getPeerConnection();
@@ -418,7 +585,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return stream;
     }
 
-    private MediaStreamTrack getTrack(String trackId) {
+    MediaStreamTrack getTrack(String trackId) {
         MediaStreamTrack track = getLocalTrack(trackId);
 
         if (track == null) {
@@ -434,6 +601,67 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return track;
     }
 
+    /**
+     * Requests a keyframe for a specific remote video track on behalf of a
+     * renderer which has just started rendering it.
+     *
+     * @param trackId the ID of the remote video track
+     */
+    void requestKeyFrame(String trackId) {
+        ThreadUtils.runOnExecutor(() -> {
+            for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
+                if (mPeerConnectionObservers.valueAt(i).requestKeyFrame(trackId)) {
+                    break;
+                }
+            }
+        });
+    }
+
+    VideoFrameProcessor.Factory getVideoFrameProcessorFactory(String name) {
+        return videoFrameProcessorFactories.get(name);
+    }
+
+    /**
+     * Gets the {@code PeerConnectionObserver}s of this module. Must be
+     * invoked on the executor.
+     */
+    List<PeerConnectionObserver> getPeerConnectionObservers() {
+        List<PeerConnectionObserver> observers = new ArrayList<>();
+
+        for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
+            observers.add(mPeerConnectionObservers.valueAt(i));
+        }
+
+        return observers;
+    }
+
+    /**
+     * Gets the IDs of the enabled local audio tracks. Must be invoked on the
+     * executor.
+     */
+    List<String> getLocalAudioTrackIds() {
+        return getUserMediaImpl.getLocalAudioTrackIds();
+    }
+
+    /**
+     * Gets the {@code PeerConnection}s of this module. Must be invoked on the
+     * executor.
+     */
+    List<PeerConnection> getPeerConnections() {
+        List<PeerConnection> peerConnections = new ArrayList<>();
+
+        for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
+            PeerConnection peerConnection
+                = mPeerConnectionObservers.valueAt(i).getPeerConnection();
+
+            if (peerConnection != null) {
+                peerConnections.add(peerConnection);
+            }
+        }
+
+        return peerConnections;
+    }
+
     MediaStreamTrack getLocalTrack(String trackId) {
         return getUserMediaImpl.getTrack(trackId);
     }
@@ -485,6 +713,14 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             getUserMediaImpl.getUserMedia(constraints, successCallback, errorCallback));
     }
 
+    @ReactMethod
+    public void getDisplayMedia(ReadableMap constraints,
+                                Callback    successCallback,
+                                Callback    errorCallback) {
+        ThreadUtils.runOnExecutor(() ->
+            getUserMediaImpl.getDisplayMedia(constraints, successCallback, errorCallback));
+    }
+
     @ReactMethod
     public void enumerateDevices(Callback callback) {
         ThreadUtils.runOnExecutor(() ->
@@ -621,6 +857,195 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         getUserMediaImpl.mediaStreamTrackSetEnabled(id, enabled);
     }
 
+    /**
+     * Applies new (normalized) video constraints to a specific local video
+     * track without recreating it or reopening its camera if possible.
+     *
+     * @param trackId the ID of the local video track
+     * @param constraints the normalized video constraints
+     * @param callback invoked with {@code true} and the new settings of the
+     * track or {@code false} and an error message
+     */
+    @ReactMethod
+    public void mediaStreamTrackApplyConstraints(String trackId,
+                                                 ReadableMap constraints,
+                                                 Callback callback) {
+        ThreadUtils.runOnExecutor(() -> {
+            WritableMap settings
+                = getUserMediaImpl.applyConstraints(trackId, constraints);
+
+            if (settings == null) {
+                callback.invoke(false, "Local video track not found");
+            } else {
+                callback.invoke(true, settings);
+            }
+        });
+    }
+
+    /**
+     * Starts metering the audio levels of the local and remote audio tracks.
+     * Only threshold crossings and changes of the list of the loudest tracks
+     * are reported, as events.
+     *
+     * @param options {@code interval} (in milliseconds), {@code threshold}
+     * (in the range [0, 1]) and {@code maxSpeakers}
+     */
+    @ReactMethod
+    public void startAudioLevelMonitor(ReadableMap options) {
+        ThreadUtils.runOnExecutor(() -> audioLevelMonitor.start(options));
+    }
+
+    @ReactMethod
+    public void stopAudioLevelMonitor() {
+        ThreadUtils.runOnExecutor(() -> audioLevelMonitor.stop());
+    }
+
+    /**
+     * Describes the {@code AudioDeviceModule} in use: sample rates, hardware
+     * effects, low-latency support and the latency of the record and playout
+     * buffers.
+     *
+     * @param callback invoked with the description
+     */
+    @ReactMethod
+    public void getAudioDeviceModuleInfo(Callback callback) {
+        ThreadUtils.runOnExecutor(() -> {
+            WritableMap info
+                = AudioDeviceOptions.getInfo(
+                    getReactApplicationContext(), audioDeviceOptions);
+
+            info.putBoolean("custom", customAudioDeviceModule);
+            callback.invoke(info);
+        });
+    }
+
+    /**
+     * Completes the initialization of this {@code WebRTCModule} ahead of its
+     * first use, e.g. during the splash screen of the application, and
+     * reports how long each phase took in milliseconds. The native library
+     * and the {@code PeerConnectionFactory} are initialized when the module is
+     * constructed so this merely waits for that. The root EGL context and the
+     * lists of the supported video codecs, which are otherwise created on
+     * first use of video, are created as well unless {@code video} is
+     * {@code false} or the module is audio-only.
+     *
+     * @param options {@code video} (defaults to {@code true})
+     * @param callback invoked with the durations of the phases
+     */
+    @ReactMethod
+    public void prewarm(ReadableMap options, Callback callback) {
+        ThreadUtils.runOnExecutor(() -> {
+            boolean video
+                = options == null
+                    || !options.hasKey("video")
+                    || options.isNull("video")
+                    || options.getBoolean("video");
+            WritableMap timings = Arguments.createMap();
+
+            timings.putDouble("queued", initQueuedDuration);
+            timings.putDouble("nativeLibraryLoad", nativeLibraryLoadDuration);
+            timings.putDouble("initialize", initializeDuration);
+            timings.putDouble("audioDeviceModule", audioDeviceModuleDuration);
+            timings.putDouble("peerConnectionFactory", peerConnectionFactoryDuration);
+
+            if (video && !audioOnly) {
+                long time = SystemClock.elapsedRealtime();
+
+                EglUtils.getRootEglBaseContext();
+                timings.putDouble("egl", SystemClock.elapsedRealtime() - time);
+
+                time = SystemClock.elapsedRealtime();
+                if (videoEncoderFactory != null) {
+                    videoEncoderFactory.getSupportedCodecs();
+                }
+                if (videoDecoderFactory != null) {
+                    videoDecoderFactory.getSupportedCodecs();
+                }
+                timings.putDouble("codecs", SystemClock.elapsedRealtime() - time);
+            }
+
+            timings.putDouble("total", SystemClock.elapsedRealtime() - constructedTime);
+            callback.invoke(timings);
+        });
+    }
+
+    /**
+     * Lists the video codecs the encoder and decoder factories support, in
+     * order of preference i.e. as configured by the {@link CodecPolicy}.
+     *
+     * @param callback invoked with the {@code encoders} and the
+     * {@code decoders}, each an array of {@code name} and {@code params}
+     */
+    @ReactMethod
+    public void getSupportedVideoCodecs(Callback callback) {
+        ThreadUtils.runOnExecutor(() -> {
+            WritableMap codecs = Arguments.createMap();
+
+            codecs.putArray(
+                "encoders",
+                videoCodecsToArray(
+                    videoEncoderFactory == null
+                        ? null
+                        : videoEncoderFactory.getSupportedCodecs()));
+            codecs.putArray(
+                "decoders",
+                videoCodecsToArray(
+                    videoDecoderFactory == null
+                        ? null
+                        : videoDecoderFactory.getSupportedCodecs()));
+            callback.invoke(codecs);
+        });
+    }
+
+    private static WritableArray videoCodecsToArray(VideoCodecInfo[] infos) {
+        WritableArray array = Arguments.createArray();
+
+        if (infos != null) {
+            for (VideoCodecInfo info : infos) {
+                WritableMap params = Arguments.createMap();
+
+                for (Map.Entry<String, String> e : info.params.entrySet()) {
+                    params.putString(e.getKey(), e.getValue());
+                }
+
+                WritableMap codec = Arguments.createMap();
+                codec.putString("name", info.name);
+                codec.putMap("params", params);
+                array.pushMap(codec);
+            }
+        }
+
+        return array;
+    }
+
+    /**
+     * Gets the timing of the {@link VideoFrameProcessor}s of a specific local
+     * video track.
+     *
+     * @param trackId the ID of the local video track
+     * @param callback invoked with an array of the timings of the stages in
+     * processing order
+     */
+    @ReactMethod
+    public void mediaStreamTrackGetProcessorStats(String trackId, Callback callback) {
+        ThreadUtils.runOnExecutor(() ->
+            callback.invoke(getUserMediaImpl.getProcessorStats(trackId)));
+    }
+
+    /**
+     * Gets the timing of the camera pipeline of a specific local video track
+     * i.e. the startup latency of the camera, the latency of the last camera
+     * switch and the freezes of the camera.
+     *
+     * @param trackId the ID of the local video track
+     * @param callback invoked with the metrics in milliseconds
+     */
+    @ReactMethod
+    public void mediaStreamTrackGetCameraMetrics(String trackId, Callback callback) {
+        ThreadUtils.runOnExecutor(() ->
+            callback.invoke(getUserMediaImpl.getCameraMetrics(trackId)));
+    }
+
     @ReactMethod
     public void mediaStreamTrackSwitchCamera(String id) {
         MediaStreamTrack track = getLocalTrack(id);
@@ -629,6 +1054,40 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Takes a snapshot of the next frame of a specific local or remote video
+     * track and writes it into a file.
+     *
+     * @param trackId the ID of the video track
+     * @param maxWidth the maximum width of the snapshot or zero for the width
+     * of the frame
+     * @param format {@code jpeg}, {@code webp} or {@code png}
+     * @param callback invoked with {@code true} and the path of the file or
+     * {@code false} and an error message
+     */
+    @ReactMethod
+    public void captureFrame(String trackId,
+                             int maxWidth,
+                             String format,
+                             Callback callback) {
+        ThreadUtils.runOnExecutor(() ->
+            captureFrameAsync(trackId, maxWidth, format, callback));
+    }
+
+    private void captureFrameAsync(String trackId,
+                                   int maxWidth,
+                                   String format,
+                                   Callback callback) {
+        MediaStreamTrack track = getTrack(trackId);
+        if (!(track instanceof VideoTrack)) {
+            Log.d(TAG, "captureFrame() video track is null");
+            callback.invoke(false, "Video track not found");
+            return;
+        }
+        videoTrackSnapshotter.captureFrame(
+            (VideoTrack) track, maxWidth, format, callback);
+    }
+
     @ReactMethod
     public void peerConnectionSetConfiguration(ReadableMap configuration,
                                                int id) {
@@ -21,6 +21,7 @@ public class WebRTCModulePackage implements ReactPackage {
     public List<ViewManager> createViewManagers(
             ReactApplicationContext reactContext) {
         return Arrays.<ViewManager>asList(
+            new RTCCompositorViewManager(),
             new RTCVideoViewManager()
         );
     }
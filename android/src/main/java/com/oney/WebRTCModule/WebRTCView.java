@@ -9,7 +9,10 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.util.Log;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.uimanager.events.RCTEventEmitter;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -17,11 +20,13 @@ import java.util.List;
 import java.util.Objects;
 
 import org.webrtc.EglBase;
+import org.webrtc.GlRectDrawer;
 import org.webrtc.MediaStream;
 import org.webrtc.RendererCommon;
 import org.webrtc.RendererCommon.RendererEvents;
 import org.webrtc.RendererCommon.ScalingType;
 import org.webrtc.SurfaceViewRenderer;
+import org.webrtc.VideoSink;
 import org.webrtc.VideoTrack;
 
 public class WebRTCView extends ViewGroup {
@@ -52,6 +57,19 @@ public class WebRTCView extends ViewGroup {
      */
     private static final Method IS_IN_LAYOUT;
 
+    /**
+     * The name of the event with which {@code WebRTCView} periodically reports
+     * its rendering metrics. Exposed to JavaScript as {@code onRenderStats}.
+     */
+    static final String RENDER_STATS_EVENT = "topRenderStats";
+
+    /**
+     * The name of the event with which {@code WebRTCView} reports that it has
+     * rendered the first frame of its video track and how long that took.
+     * Exposed to JavaScript as {@code onFirstFrameRendered}.
+     */
+    static final String FIRST_FRAME_RENDERED_EVENT = "topFirstFrameRendered";
+
     private static final String TAG = WebRTCModule.TAG;
 
     static {
@@ -107,6 +125,13 @@ public class WebRTCView extends ViewGroup {
      */
     private boolean rendererAttached;
 
+    /**
+     * The indicator which determines whether this {@code WebRTCView} is to ask
+     * for a keyframe of its (remote) video track whenever it starts rendering
+     * it so that it does not have to wait for the next periodic one.
+     */
+    private boolean requestKeyFrameOnAttach;
+
     /**
      * The {@code RendererEvents} which listens to rendering events reported by
      * {@link #surfaceViewRenderer}.
@@ -128,6 +153,46 @@ public class WebRTCView extends ViewGroup {
             }
         };
 
+    /**
+     * The {@link VideoSink} which is added to {@link #videoTrack}. Forwards
+     * the frames to {@link #surfaceViewRenderer} while counting them for the
+     * sake of {@link #renderStats}.
+     */
+    private final VideoSink rendererSink;
+
+    /**
+     * The rendering metrics of {@link #surfaceViewRenderer}.
+     */
+    private final VideoRenderStats renderStats = new VideoRenderStats();
+
+    /**
+     * The interval in milliseconds at which {@link #renderStats} are to be
+     * reported to JavaScript. Zero disables the reports.
+     */
+    private int renderStatsInterval;
+
+    /**
+     * Reinitializes {@link #surfaceViewRenderer} with the new root EGL context
+     * after {@link EglUtils} has rebuilt it.
+     */
+    private final EglUtils.RootEglContextListener rootEglContextListener
+        = eglContext -> post(() -> {
+            removeRendererFromVideoTrack();
+            tryAddRendererToVideoTrack();
+        });
+
+    /**
+     * The {@code Runnable} which reports {@link #renderStats} and reschedules
+     * itself for as long as rendering is in progress.
+     */
+    private final Runnable reportRenderStatsRunnable
+        = new Runnable() {
+            @Override
+            public void run() {
+                reportRenderStats();
+            }
+        };
+
     /**
      * The {@code Runnable} representation of
      * {@link #requestSurfaceViewRendererLayout()}. Explicitly defined in order
@@ -172,6 +237,8 @@ public class WebRTCView extends ViewGroup {
         surfaceViewRenderer = new SurfaceViewRenderer(context);
         addView(surfaceViewRenderer);
 
+        rendererSink = renderStats.wrapSink(surfaceViewRenderer);
+
         setMirror(false);
         setScalingType(DEFAULT_SCALING_TYPE);
     }
@@ -257,6 +324,7 @@ public class WebRTCView extends ViewGroup {
             // infrastructure hooked up while this View is not attached to a
             // window. Additionally, a memory leak was solved in a similar way
             // on iOS.
+            EglUtils.addRootEglContextListener(rootEglContextListener);
             tryAddRendererToVideoTrack();
         } finally {
             super.onAttachedToWindow();
@@ -271,6 +339,7 @@ public class WebRTCView extends ViewGroup {
             // infrastructure hooked up while this View is not attached to a
             // window. Additionally, a memory leak was solved in a similar way
             // on iOS.
+            EglUtils.removeRootEglContextListener(rootEglContextListener);
             removeRendererFromVideoTrack();
         } finally {
             super.onDetachedFromWindow();
@@ -284,9 +353,20 @@ public class WebRTCView extends ViewGroup {
      * rendered) shines through.
      */
     private void onFirstFrameRendered() {
+        renderStats.onFirstFrameRendered();
         post(() -> {
-            Log.d(TAG, "First frame rendered.");
+            long timeToFirstFrame = renderStats.getTimeToFirstFrameMs();
+
+            Log.d(TAG, "First frame rendered in " + timeToFirstFrame + " ms.");
             surfaceViewRenderer.setBackgroundColor(Color.TRANSPARENT);
+
+            WritableMap params = Arguments.createMap();
+            params.putString("streamURL", streamURL);
+            params.putDouble("timeToFirstFrame", timeToFirstFrame);
+
+            ReactContext reactContext = (ReactContext) getContext();
+            reactContext.getJSModule(RCTEventEmitter.class)
+                .receiveEvent(getId(), FIRST_FRAME_RENDERED_EVENT, params);
         });
     }
 
@@ -400,7 +480,7 @@ public class WebRTCView extends ViewGroup {
 
             if (videoTrack != null) {
                 try {
-                    videoTrack.removeSink(surfaceViewRenderer);
+                    videoTrack.removeSink(rendererSink);
                 } catch (Throwable tr) {
                     // Releasing streams happens in the WebRTC thread, thus we might (briefly) hold
                     // a reference to a released stream.
@@ -410,6 +490,7 @@ public class WebRTCView extends ViewGroup {
 
             surfaceViewRenderer.release();
             rendererAttached = false;
+            removeCallbacks(reportRenderStatsRunnable);
 
             // Since this WebRTCView is no longer rendering anything, make sure
             // surfaceViewRenderer displays nothing as well.
@@ -422,6 +503,25 @@ public class WebRTCView extends ViewGroup {
         }
     }
 
+    /**
+     * Reports the rendering metrics collected since the last report to
+     * JavaScript and schedules the next report.
+     */
+    private void reportRenderStats() {
+        if (!rendererAttached || renderStatsInterval <= 0) {
+            return;
+        }
+
+        WritableMap params = renderStats.report();
+        params.putString("streamURL", streamURL);
+
+        ReactContext reactContext = (ReactContext) getContext();
+        reactContext.getJSModule(RCTEventEmitter.class)
+            .receiveEvent(getId(), RENDER_STATS_EVENT, params);
+
+        postDelayed(reportRenderStatsRunnable, renderStatsInterval);
+    }
+
     /**
      * Request that {@link #surfaceViewRenderer} be laid out (as soon as
      * possible) because layout-related state either of this instance or of
@@ -478,6 +578,40 @@ public class WebRTCView extends ViewGroup {
         setScalingType(scalingType);
     }
 
+    /**
+     * Sets the indicator which determines whether this {@code WebRTCView} is
+     * to ask for a keyframe of its (remote) video track whenever it starts
+     * rendering it. For more details, refer to the documentation of the
+     * {@code requestKeyFrameOnAttach} property of the JavaScript counterpart
+     * of {@code WebRTCView} i.e. {@code RTCView}.
+     *
+     * @param requestKeyFrameOnAttach {@code true} to request a keyframe upon
+     * attach; otherwise, {@code false}
+     */
+    public void setRequestKeyFrameOnAttach(boolean requestKeyFrameOnAttach) {
+        this.requestKeyFrameOnAttach = requestKeyFrameOnAttach;
+    }
+
+    /**
+     * Sets the interval at which this {@code WebRTCView} is to report its
+     * rendering metrics through the {@code onRenderStats} event. For more
+     * details, refer to the documentation of the {@code renderStatsInterval}
+     * property of the JavaScript counterpart of {@code WebRTCView} i.e.
+     * {@code RTCView}.
+     *
+     * @param renderStatsInterval The interval in milliseconds or zero to stop
+     * reporting.
+     */
+    public void setRenderStatsInterval(int renderStatsInterval) {
+        if (this.renderStatsInterval != renderStatsInterval) {
+            this.renderStatsInterval = renderStatsInterval;
+            removeCallbacks(reportRenderStatsRunnable);
+            if (rendererAttached && renderStatsInterval > 0) {
+                postDelayed(reportRenderStatsRunnable, renderStatsInterval);
+            }
+        }
+    }
+
     private void setScalingType(ScalingType scalingType) {
         synchronized (layoutSyncRoot) {
             if (this.scalingType == scalingType) {
@@ -602,10 +736,24 @@ public class WebRTCView extends ViewGroup {
                 return;
             }
 
-            surfaceViewRenderer.init(sharedContext, rendererEvents);
+            try {
+                surfaceViewRenderer.init(
+                    sharedContext,
+                    rendererEvents,
+                    EglBase.CONFIG_PLAIN,
+                    renderStats.wrapDrawer(new GlRectDrawer()));
+            } catch (RuntimeException ex) {
+                // The shared context may have been lost. Have it rebuilt, we
+                // will be notified through rootEglContextListener.
+                Log.e(TAG, "Failed to initialize renderer", ex);
+                surfaceViewRenderer.release();
+                ThreadUtils.runOnExecutor(EglUtils::recoverRootEglBase);
+                return;
+            }
+            renderStats.reset();
 
             try {
-                videoTrack.addSink(surfaceViewRenderer);
+                videoTrack.addSink(rendererSink);
             } catch (Throwable tr) {
                 // Releasing streams happens in the WebRTC thread, thus we might (briefly) hold
                 // a reference to a released stream.
@@ -616,6 +764,18 @@ public class WebRTCView extends ViewGroup {
             }
 
             rendererAttached = true;
+
+            if (requestKeyFrameOnAttach) {
+                ReactContext reactContext = (ReactContext) getContext();
+                WebRTCModule module
+                    = reactContext.getNativeModule(WebRTCModule.class);
+
+                module.requestKeyFrame(videoTrack.id());
+            }
+
+            if (renderStatsInterval > 0) {
+                postDelayed(reportRenderStatsRunnable, renderStatsInterval);
+            }
         }
     }
 }
@@ -0,0 +1,43 @@
+'use strict';
+
+import {NativeModules} from 'react-native';
+import * as RTCUtil from './RTCUtil';
+
+import MediaStream from './MediaStream';
+import MediaStreamError from './MediaStreamError';
+
+const { WebRTCModule } = NativeModules;
+
+
+export default function getDisplayMedia(constraints = { video: true }) {
+  if (typeof WebRTCModule.getDisplayMedia !== 'function') {
+    return Promise.reject(new MediaStreamError({
+      message: 'getDisplayMedia is not supported.',
+      name: 'NotSupportedError'
+    }));
+  }
+
+  if (typeof constraints !== 'object') {
+    return Promise.reject(new TypeError('constraints is not a dictionary'));
+  }
+
+  constraints = RTCUtil.normalizeDisplayMediaConstraints(constraints);
+
+  return new Promise((resolve, reject) => {
+    const success = (id, tracks) => {
+      const info = {
+        streamId: id,
+        streamReactTag: id,
+        tracks
+      };
+
+      resolve(new MediaStream(info));
+    };
+
+    const failure = (type, message) => {
+      reject(new MediaStreamError({ message, name: type }));
+    };
+
+    WebRTCModule.getDisplayMedia(constraints, success, failure);
+  });
+}
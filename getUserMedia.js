@@ -33,7 +33,10 @@ export default function getUserMedia(constraints = {}) {
   } else {
     reqPermissions.push(Promise.resolve(false));
   }
-  if (constraints.video) {
+  if (constraints.video && constraints.video.source) {
+    // A synthetic source does not need the camera.
+    reqPermissions.push(Promise.resolve(true));
+  } else if (constraints.video) {
     reqPermissions.push(permissions.request({ name: 'camera' }));
   } else {
     reqPermissions.push(Promise.resolve(false));
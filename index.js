@@ -4,20 +4,26 @@ import RTCPeerConnection from './RTCPeerConnection';
 import RTCIceCandidate from './RTCIceCandidate';
 import RTCSessionDescription from './RTCSessionDescription';
 import RTCView from './RTCView';
+import RTCCompositorView from './RTCCompositorView';
+import audioLevelMonitor from './AudioLevelMonitor';
 import MediaStream from './MediaStream';
 import MediaStreamTrack from './MediaStreamTrack';
 import mediaDevices from './MediaDevices';
 import permissions from './Permissions';
+import prewarm from './prewarm';
 
 export {
   RTCPeerConnection,
   RTCIceCandidate,
   RTCSessionDescription,
   RTCView,
+  RTCCompositorView,
+  audioLevelMonitor,
   MediaStream,
   MediaStreamTrack,
   mediaDevices,
   permissions,
+  prewarm,
   registerGlobals
 };
 
@@ -34,6 +40,9 @@ function registerGlobals() {
 	navigator.mediaDevices.getUserMedia =
 		mediaDevices.getUserMedia.bind(mediaDevices);
 
+	navigator.mediaDevices.getDisplayMedia =
+		mediaDevices.getDisplayMedia.bind(mediaDevices);
+
 	navigator.mediaDevices.enumerateDevices =
 		mediaDevices.enumerateDevices.bind(mediaDevices);
 
@@ -0,0 +1,25 @@
+'use strict';
+
+import {NativeModules} from 'react-native';
+
+const { WebRTCModule } = NativeModules;
+
+/**
+ * Custom: completes the (asynchronous) initialization of the native module
+ * ahead of the first RTCPeerConnection / getUserMedia, e.g. during the splash
+ * screen of the application. Resolves once the module is ready with how long
+ * each phase took in milliseconds: queued, nativeLibraryLoad, initialize,
+ * audioDeviceModule, peerConnectionFactory and, unless options.video is false,
+ * egl and codecs. Android only; resolves with an empty object elsewhere.
+ *
+ * @param {Object} options - video (whether to warm up the video stack as well,
+ * true by default).
+ * @returns {Promise<Object>}
+ */
+export default function prewarm(options = {}) {
+  if (typeof WebRTCModule.prewarm !== 'function') {
+    return Promise.resolve({});
+  }
+
+  return new Promise(resolve => WebRTCModule.prewarm(options, resolve));
+}